@@ -0,0 +1,133 @@
+/**
+ * This class represents the state of a {@link DocumentCollection} at a certain
+ * version, as seen by a query.
+ *
+ * A snapshot contains every {@link Document} that has been added to the
+ * collection before the snapshot has been taken and that has not been removed
+ * up to the version of the snapshot. Adding or removing {@link Document}s
+ * afterwards does not change the snapshot, so a query working on a snapshot
+ * never sees a half-done modification.
+ *
+ * @see DocumentCollection
+ *
+ */
+public class CollectionSnapshot {
+  /**
+   * the version of the collection
+   */
+  private final long version;
+
+  /**
+   * the number of document ids handed out before the snapshot has been taken
+   */
+  private final int numIds;
+
+  /**
+   * the cells of the collection, indexed by the id of their document
+   */
+  private final DocumentCollectionCell[] cellsById;
+
+  /**
+   * the segments of the index of the collection, ordered by their base ids
+   */
+  private final Segment[] segments;
+
+  /**
+   * Constructs a new snapshot.
+   *
+   * @param version   the version of the collection
+   * @param numIds    the number of document ids handed out so far
+   * @param cellsById the cells of the collection, indexed by document id
+   * @param segments  the segments of the index of the collection, ordered by
+   *                  their base ids
+   */
+  public CollectionSnapshot(long version, int numIds, DocumentCollectionCell[] cellsById, Segment[] segments) {
+    this.version = version;
+    this.numIds = numIds;
+    this.cellsById = cellsById;
+    this.segments = segments;
+  }
+
+  /**
+   * Returns the version of the collection this snapshot has been taken at.
+   *
+   * @return the version of the collection
+   */
+  public long getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Returns the number of document ids handed out before this snapshot has been
+   * taken. Every {@link Document} in this snapshot has a lower id.
+   *
+   * @return the number of document ids handed out
+   */
+  public int getNumIds() {
+    return this.numIds;
+  }
+
+  /**
+   * Returns the segments of the index of the collection, ordered by their base
+   * ids.
+   *
+   * The segments may contain entries of {@link Document}s that are not part of
+   * this snapshot, so every document id read from a segment has to be checked
+   * using {@link CollectionSnapshot#contains(int)}.
+   *
+   * @return the segments of the index of the collection
+   */
+  public Segment[] getSegments() {
+    return this.segments;
+  }
+
+  /**
+   * Determines, whether the {@link Document} with the specified id is part of
+   * this snapshot.
+   *
+   * @param documentId the id of the document
+   * @return <code>true</code>, if the {@link Document} is part of this snapshot
+   */
+  public boolean contains(int documentId) {
+    return this.getCell(documentId) != null;
+  }
+
+  /**
+   * Returns the {@link Document} with the specified id or <code>null</code>, if
+   * it is not part of this snapshot.
+   *
+   * @param documentId the id of the document
+   * @return the {@link Document} with the specified id
+   */
+  public Document getDocument(int documentId) {
+    DocumentCollectionCell cell = this.getCell(documentId);
+
+    if (cell == null) {
+      return null;
+    }
+
+    return cell.getDocument();
+  }
+
+  /**
+   * Returns the {@link DocumentCollectionCell} of the {@link Document} with the
+   * specified id or <code>null</code>, if it is not part of this snapshot.
+   *
+   * @param documentId the id of the document
+   * @return the {@link DocumentCollectionCell} with the specified id
+   */
+  private DocumentCollectionCell getCell(int documentId) {
+    if (documentId < 0 || documentId >= this.numIds) {
+      return null;
+    }
+
+    /* read the cell only once, it may be purged concurrently */
+    DocumentCollectionCell cell = this.cellsById[documentId];
+
+    if (cell == null || cell.getRemovedIn() <= this.version) {
+      return null;
+    }
+
+    return cell;
+  }
+}
@@ -1,3 +1,16 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * The class {@code Document} represents a document.
  * 
@@ -46,6 +59,26 @@ public class Document {
   "lich", "ling", "logie", "los", "mal", "meter", "mut", "nis", "or", "sam", "schaft", "tum", "ung", "voll", "wert",
   "würdig" };
 
+  /**
+   * {@link Document#SUFFICES} compiled into a trie, used for stemming
+   */
+  private static final SuffixTrie SUFFIX_TRIE = new SuffixTrie(Document.SUFFICES);
+
+  /**
+   * the number of word stems cached by all documents together
+   */
+  private static final int STEM_CACHE_SIZE = 16384;
+
+  /**
+   * the stems of the most recently stemmed words, shared by all documents
+   */
+  private static final StemCache STEM_CACHE = new StemCache(STEM_CACHE_SIZE);
+
+  /**
+   * the number of characters read at once when reading the content from a file
+   */
+  static final int READ_BUFFER_SIZE = 8192;
+
   /**
    * the words of this document and their counts
    */
@@ -68,6 +101,24 @@ public class Document {
    * @param content        the text content of this document
    */
   public Document(String title, String language, String description, Date releaseDate, Author author, String content) {
+    this(title, language, description, releaseDate, author);
+    
+    this.addContent(content);
+  }
+
+  /**
+   * Constructs a document with the given values and without any content.
+   * 
+   * The content can be added afterwards using
+   * {@link Document#addContentFromFile(String)}.
+   * 
+   * @param title       the document's title
+   * @param language    the language the document is written in
+   * @param description a short description of the document
+   * @param releaseDate the release date of the document
+   * @param author      the author of the document
+   */
+  protected Document(String title, String language, String description, Date releaseDate, Author author) {
     /* use this methods, just in case the value of the parameters is null */
     this.setTitle(title);
     this.setLanguage(language);
@@ -75,8 +126,30 @@ public class Document {
 
     this.releaseDate = releaseDate;
     this.author = author;
-    
-    this.addContent(content);
+
+    this.wordCounts = new WordCountsArray(0);
+  }
+
+  /**
+   * Creates a document from the content of the specified file.
+   * 
+   * The name of the file is used as title of the document. The file is read as
+   * described in {@link Document#addContentFromFile(String)}.
+   * 
+   * @param fileName the name of the file
+   * @return the created document or <code>null</code>, if the file could not be
+   *         read
+   */
+  public static Document createDocumentFromFile(String fileName) {
+    Document doc = new Document(fileName, "", "", null, null);
+
+    try {
+      doc.addContentFromFile(fileName);
+    } catch (IOException e) {
+      return null;
+    }
+
+    return doc;
   }
 
   /**
@@ -221,173 +294,206 @@ public class Document {
   }
 
   /**
-   * Splits the specified text into its single words.
+   * Splits the specified text into its single words, cuts the suffix of every
+   * word and adds the remaining word stem to the specified
+   * {@link WordCountsArray}.
+   * 
+   * A word is a maximal sequence of letters and digits, so words are separated
+   * by any whitespace or punctuation character. The text is scanned by code
+   * point, so a letter made of a surrogate pair is part of a word, too. The
+   * text is scanned only once and every word is taken out of the text as a
+   * whole, so no intermediate strings are built character by character.
    * 
-   * This method looks for spaces, splits the specified text at the spaces and
-   * returns an array of the single words. We assume that the specified text only
-   * consists of lower case letters and case.
+   * If the specified text is only a part of a longer text, the last word of
+   * the part may continue in the next part. In this case, the last word is not
+   * added and the index of its first character is returned, so that it can be
+   * passed again together with the next part. The same holds for the first
+   * half of a surrogate pair at the end of the part.
    * 
-   * @param content the text to split
-   * @return an array of single words of the argument
+   * @param content      the text to split
+   * @param wca          the {@link WordCountsArray} the word stems are added to
+   * @param endOfContent <code>true</code>, if the text is not continued
+   * @param unknownWords collects the counts of the word stems not contained in
+   *                     the {@link TermDictionary} instead of adding them, or
+   *                     <code>null</code>, if all word stems are added
+   * @return the index of the first character that has not been processed
    */
-  private static String[] tokenize(String content) {
-    int wordCount = 0;
+  private static int addWords(CharSequence content, WordCountsArray wca, boolean endOfContent,
+      Map<String, Integer> unknownWords) {
+    /* start of the current word or -1, if we are between two words */
+    int start = -1;
 
-    /* count spaces in the content */
-    for (int i = 0; i < content.length(); i++) {
-      if (content.charAt(i) == ' ') {
-        wordCount++;
+    int i = 0;
+    while (i < content.length()) {
+      /* the second half of a surrogate pair may be in the next part */
+      if (!endOfContent && i == content.length() - 1 && Character.isHighSurrogate(content.charAt(i))) {
+        return start == -1 ? i : start;
       }
-    }
-
-    // there is always one word more than there are spaces
-    wordCount++;
 
-    // the resulting array
-    String[] words = new String[wordCount];
+      /* letters outside the Basic Multilingual Plane take two chars */
+      int codePoint = Character.codePointAt(content, i);
 
-    String word = "";
-    int wordIndex = 0;
-
-    for (int i = 0; i <= content.length(); i++) {
-      /*
-       * reached end of content or end of word important: check end of content first!!
-       */
-      if (i == content.length() || content.charAt(i) == ' ') {
-        if (word.length() > 0) {
-          /* put word in array */
-          words[wordIndex] = word;
-          wordIndex++;
-
-          /* start with empty word for next loop */
-          word = "";
+      if (Character.isLetterOrDigit(codePoint)) {
+        if (start == -1) {
+          start = i;
         }
-      } else {
-        /* not end of word: append character */
-        word = word + content.charAt(i);
+      } else if (start != -1) {
+        Document.addWord(content, start, i, wca, unknownWords);
+        start = -1;
       }
-    }
 
-    return words;
-  }
-
-  private void addContent(String content) {
-    String[] words = Document.tokenize(content);
+      i += Character.charCount(codePoint);
+    }
 
-    this.wordCounts = new WordCountsArray(0);
+    /* the text may end within a word */
+    if (start == -1) {
+      return content.length();
+    }
 
-    for (int i = 0; i < words.length; i++) {
-      String word = words[i];
+    if (!endOfContent) {
+      return start;
+    }
 
-      /* find suffix and cut it */
-      String suffix = Document.findSuffix(word);
-      word = Document.cutSuffix(word, suffix);
+    Document.addWord(content, start, content.length(), wca, unknownWords);
+    return content.length();
+  }
 
-      this.wordCounts.add(word, 1);
+  /**
+   * Cuts the suffix of the word made of the specified range of characters and
+   * adds the remaining word stem to the specified {@link WordCountsArray}.
+   * 
+   * @param content      the text containing the word
+   * @param start        the index of the first character of the word
+   * @param end          the index after the last character of the word
+   * @param wca          the {@link WordCountsArray} the word stem is added to
+   * @param unknownWords collects the count of the word stem instead, if it is
+   *                     not contained in the {@link TermDictionary}, or
+   *                     <code>null</code>, if the word stem is always added
+   */
+  private static void addWord(CharSequence content, int start, int end, WordCountsArray wca,
+      Map<String, Integer> unknownWords) {
+    String stem = Document.stem(content, start, end);
+
+    if (unknownWords == null) {
+      wca.add(stem, 1);
+    } else if (!wca.addKnown(stem, 1)) {
+      unknownWords.merge(stem.toLowerCase(), 1, Integer::sum);
     }
   }
 
   /**
-   * Determines, whether the last <code>n</code> characters of the specified
-   * <code>String</code>s word1 and word2 are equal.
+   * Returns the stem of the specified word, i.e. the word with its longest
+   * suffix according to {@link Document#SUFFICES} cut off.
    * 
-   * If <code>n</code> &gt; <code>word1.length()</code> or <code>n</code> &gt;
-   * <code>word2.length()</code>, <code>false</code> is returned.
+   * If the word has none of these suffices, the word itself is returned. The
+   * stems of frequent words are taken from {@link Document#getStemCache()},
+   * the word is only taken out of the text, if its stem is not cached.
    * 
-   * @param word1 the first word
-   * @param word2 the second word
-   * @param n     how many characters to check
-   * @return <code>true</code>, if the last <code>n</code> characters of
-   *         <code>word1</code> and <code>word2</code> are equal;
-   *         <code>false</code> otherwise
+   * @param content the text containing the word
+   * @param start   the index of the first character of the word
+   * @param end     the index after the last character of the word
+   * @return the stem of the specified word
    */
-  private static boolean sufficesEqual(String word1, String word2, int n) {
-    /* if n is too large, last n chars are not equal */
-    if (n > word1.length() || n > word2.length()) {
-      return false;
+  private static String stem(CharSequence content, int start, int end) {
+    String stem = STEM_CACHE.get(content, start, end);
+
+    if (stem == null) {
+      String word = content.subSequence(start, end).toString();
+      int suffixLength = SUFFIX_TRIE.longestSuffixLength(word);
+      stem = suffixLength == 0 ? word : word.substring(0, word.length() - suffixLength);
+      STEM_CACHE.put(word, stem);
     }
 
-    boolean isEqual = true;
-    int i = 0;
-
-    while (isEqual && i < n) {
-      /* begin comparison at last char */
-      if (word1.charAt(word1.length() - 1 - i) != word2.charAt(word2.length() - 1 - i)) {
-        isEqual = false;
-      }
-      i++;
-    }
+    return stem;
+  }
 
-    return isEqual;
+  /**
+   * Returns the cache of the stems of the most recently stemmed words shared by
+   * all documents, e.g. to look at its hit ratio.
+   * 
+   * @return the stem cache
+   */
+  public static StemCache getStemCache() {
+    return STEM_CACHE;
   }
 
   /**
-   * This method utilizes {@link Document#SUFFICES} whether to find out, if the
-   * specified <code>word</code> ends with one of these suffices.
+   * Splits the specified query into its single words and cuts their suffixes
+   * just like the content of a document, but only keeps the word stems already
+   * contained in the {@link TermDictionary}, cf. {@link Query}. Querying a word
+   * no document has ever contained never adds it to the
+   * {@link TermDictionary}.
    * 
-   * @param word
-   * @return the suffix of the specified word according to
-   *         {@link Document#SUFFICES} or an empty string, if there is no suffix.
+   * @param query the query
+   * @return the word stems of the query and their counts
    */
-  private static String findSuffix(String word) {
-    if (word == null || word.equals("")) {
-      return null;
-    }
+  public static Query parseQuery(String query) {
+    WordCountsArray wca = new WordCountsArray(0);
+    Map<String, Integer> unknownWords = new HashMap<String, Integer>();
 
-    String suffix = "";
-    String suffixHit = "";
-    int i = 0;
+    if (query != null) {
+      Document.addWords(query, wca, true, unknownWords);
+    }
 
-    while (i < Document.SUFFICES.length) {
-      suffix = Document.SUFFICES[i];
+    /* the dropped words still make the query vector longer */
+    long unknownSquaredNorm = 0;
+    for (int count : unknownWords.values()) {
+      unknownSquaredNorm += (long) count * count;
+    }
 
-      /* check, if this suffix is a suffix of word */
-      if (sufficesEqual(word, suffix, suffix.length())) {
-        if (suffixHit.length() < suffix.length()) {
-          suffixHit = suffix;
-        }
-      }
+    return new Query(wca, unknownSquaredNorm);
+  }
 
-      i++;
+  private void addContent(String content) {
+    if (content != null) {
+      Document.addWords(content, this.wordCounts, true, null);
     }
-    return suffixHit;
   }
 
   /**
-   * If <code>suffix</code> is a suffix of <code>word</code>, then this suffix is
-   * cut off from <code>word</code> and the remaining word stem is returned.
+   * Reads the text content of this document from the specified file and adds
+   * its words to this document.
+   * 
+   * The file is decoded as UTF-8 and read through a {@link FileChannel} in
+   * chunks of a few thousand characters. Every chunk is tokenized and stemmed
+   * as soon as it has been read, so the whole text is never held in memory at
+   * once.
    * 
-   * If <code>suffix</code> is not a suffix of <code>word</code>, then the word
-   * itself is returned
+   * Bytes that are not valid UTF-8, e.g. of a file encoded as ISO-8859-1, are
+   * replaced by the replacement character U+FFFD, which separates words like
+   * any other character that is neither a letter nor a digit. So such a file
+   * is still read as a whole.
    * 
-   * @param word   the word
-   * @param suffix the potential suffix of the word
-   * @return the word stem of <code>word</code> with the suffix
-   *         <code>suffix</code> cut off; or <code>word</code>, if
-   *         <code>suffix</code> is not a suffix of word
+   * @param fileName the name of the file
+   * @throws IOException if the file cannot be read
    */
-  private static String cutSuffix(String word, String suffix) {
-    if (suffix == null || suffix.equals("")) {
-      return word;
-    }
-
-    if (word == null) {
-      return null;
-    }
-
-    /* not a suffix */
-    if (!sufficesEqual(word, suffix, suffix.length())) {
-      return word;
-    }
-
-    /* create word without suffix, by copying all characters of the word stem */
-    String wordWithoutSuffix = "";
+  protected void addContentFromFile(String fileName) throws IOException {
+    FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+    CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    try (Reader reader = Channels.newReader(channel, decoder, -1)) {
+      CharBuffer buffer = CharBuffer.allocate(READ_BUFFER_SIZE);
+
+      while (reader.read(buffer) != -1) {
+        buffer.flip();
+
+        /* keep the unfinished last word for the next chunk */
+        buffer.position(Document.addWords(buffer, this.wordCounts, false, null));
+        buffer.compact();
+
+        /* a single word fills the whole buffer, so make room */
+        if (!buffer.hasRemaining()) {
+          CharBuffer newBuffer = CharBuffer.allocate(buffer.capacity() * 2);
+          buffer.flip();
+          newBuffer.put(buffer);
+          buffer = newBuffer;
+        }
+      }
 
-    for (int i = 0; i < word.length() - suffix.length(); i++) {
-      wordWithoutSuffix = wordWithoutSuffix + word.charAt(i);
+      buffer.flip();
+      Document.addWords(buffer, this.wordCounts, true, null);
     }
-
-    return wordWithoutSuffix;
   }
 
   /**
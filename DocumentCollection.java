@@ -1,34 +1,1262 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
 /**
  * This class represents a ordered collection of documents.
  * 
- * The collection is implemented using a list. This class ensures, that no
- * <code>null</code> elements are ever added.
+ * The collection is implemented using a growable circular array, so that
+ * {@link Document}s can be accessed by index in constant time and added at
+ * both ends in amortized constant time. This class ensures, that no
+ * <code>null</code> elements are ever added. A collection constructed by
+ * {@link DocumentCollection#DocumentCollection(boolean, boolean)} additionally
+ * links its {@link DocumentCollectionCell}s to a doubly linked list, which can
+ * be walked from {@link DocumentCollection#getFirstCell()} or
+ * {@link DocumentCollection#getLastCell()}.
+ * 
+ * Every {@link Document} added to the collection gets a unique id and is added
+ * to an {@link InvertedIndex}, which is used to answer queries by only looking
+ * at the {@link Document}s that share at least one word with the query. The
+ * index is split into {@link Segment}s covering consecutive ranges of ids; new
+ * {@link Document}s are always added to the last segment.
+ * 
+ * A collection opened by {@link DocumentCollection#openDirectory(String)} is
+ * stored in a {@link SegmentDirectory}: as soon as the last segment contains
+ * enough {@link Document}s, it is sealed and a new one is started. A
+ * background thread writes sealed segments to files and merges stored
+ * segments, purging removed {@link Document}s, so adding {@link Document}s never
+ * requires rewriting the whole index.
+ * 
+ * The collection is thread-safe. All methods modifying the collection or
+ * accessing it by index are synchronized. Queries using
+ * {@link DocumentCollection#match(String, int)} do not lock the collection at
+ * all: they work on a {@link CollectionSnapshot} of the collection taken at the
+ * start of the query and return their own {@link QueryResult}, so any number
+ * of queries can run while {@link Document}s are added and removed.
  * 
  *
  */
 public class DocumentCollection {
   /**
-   * the first element in the collection
+   * the cells of this collection; the element at index <code>i</code> is
+   * stored at position <code>(head + i) % cells.length</code>
+   */
+  private DocumentCollectionCell[] cells;
+
+  /**
+   * the position of the first element in <code>cells</code>
+   */
+  private int head;
+
+  /**
+   * <code>true</code>, if the cells are linked to a doubly linked list
+   */
+  private final boolean linked;
+
+  /**
+   * the first cell of a linked collection or <code>null</code>
+   */
+  private DocumentCollectionCell first;
+
+  /**
+   * the last cell of a linked collection or <code>null</code>
+   */
+  private DocumentCollectionCell last;
+
+  /**
+   * the number of elements in this collection
+   */
+  private int size;
+
+  /**
+   * the segments of the index of the words of all documents in this
+   * collection, ordered by their base ids; new documents are added to the last
+   * segment
+   */
+  private volatile Segment[] segments;
+
+  /**
+   * <code>true</code>, if new segments are stored off-heap
+   */
+  private final boolean offHeap;
+
+  /**
+   * the directory the segments are stored in or <code>null</code>, if the
+   * segments are only kept in memory
+   */
+  private final SegmentDirectory directory;
+
+  /**
+   * the thread storing and merging segments in the background or
+   * <code>null</code>, if the segments are only kept in memory
+   */
+  private final ScheduledExecutorService segmentWriter;
+
+  /**
+   * the periodic flush of the background thread or <code>null</code>, if the
+   * collection is not flushed periodically
+   */
+  private ScheduledFuture<?> periodicFlush;
+
+  /**
+   * the version of this collection persisted by the last flush, cf.
+   * {@link DocumentCollection#flushPeriodically()}
+   */
+  private long flushedVersion;
+
+  /**
+   * the first exception of the background thread that has not been reported
+   * yet
+   */
+  private IOException segmentWriterException;
+
+  /**
+   * <code>true</code>, if the segments are going to be maintained by the
+   * background thread, which has not started yet
+   */
+  private volatile boolean maintenancePending;
+
+  /**
+   * the cells of this collection, indexed by the id of their document;
+   * removed cells are kept until the index is compacted
+   */
+  private volatile DocumentCollectionCell[] cellsById;
+
+  /**
+   * the id the next added document will get; every document with a lower id
+   * is completely indexed
+   */
+  private volatile int nextId;
+
+  /**
+   * the version of this collection, increased with every modification
+   */
+  private volatile long version;
+
+  /**
+   * the versions of this collection running queries are working on
+   */
+  private final PinnedVersions pinnedVersions;
+
+  /**
+   * the version up to which the entries of removed {@link Document}s have
+   * been purged from the segments kept in memory
+   */
+  private long compactedVersion;
+
+  /**
+   * <code>true</code>, if the segments kept in memory still need to be
+   * compacted, as soon as queries release the versions they are working on
+   */
+  private volatile boolean compactionPending;
+
+  /**
+   * the default value of the number of documents from which on queries are
+   * scored in parallel
+   */
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 50000;
+
+  /**
+   * the number of documents from which on queries are scored in parallel
+   */
+  private volatile int parallelThreshold;
+
+  /**
+   * the default value of the number of documents from which on the last
+   * segment is sealed
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 10000;
+
+  /**
+   * the number of documents from which on the last segment is sealed
+   */
+  private volatile int segmentSize;
+
+  /**
+   * the default value of the maximum number of cached query results
+   */
+  public static final int DEFAULT_QUERY_CACHE_SIZE = 64;
+
+  /**
+   * the results of the most recent queries
+   */
+  private final QueryCache queryCache;
+
+  /**
+   * the default value of the number of milliseconds after which modifications
+   * of a collection stored in a directory are persisted
+   */
+  public static final long DEFAULT_FLUSH_INTERVAL = 5000;
+
+  /**
+   * the number of milliseconds after which modifications are persisted or
+   * <code>0</code>, if they are only persisted by flushing explicitly
+   */
+  private long flushInterval;
+
+  /**
+   * the number of bytes given up by growing postings lists from which on the
+   * segments kept in memory are compacted
+   */
+  private static final long MIN_ABANDONED_BYTES = 1 << 20;
+
+  /**
+   * the number of stored segments from which on segments are merged
+   */
+  private static final int MAX_STORED_SEGMENTS = 8;
+
+  /**
+   * Constructs an empty collection
+   */
+  public DocumentCollection() {
+    this(false);
+  }
+
+  /**
+   * Constructs an empty collection, whose index is optionally stored off-heap.
+   * 
+   * An off-heap index keeps the postings lists and the lengths of the word
+   * count vectors of all {@link Document}s out of the reach of the garbage
+   * collector, which pays off for collections of millions of {@link Document}s.
+   * Queries are scored directly on the off-heap data.
+   * 
+   * The word count vectors themselves are not stored off-heap: every
+   * {@link Document} keeps its {@link WordCountsArray}, which is handed out by
+   * {@link Document#getWordCounts()} and needed to remove the
+   * {@link Document} from the index. Only the {@link Document}s of a
+   * collection opened from an {@link IndexFile} stay in the file until they
+   * are needed, cf. {@link DocumentCollection#open(String)}.
+   * 
+   * @param offHeap <code>true</code>, if the index is to be stored off-heap
+   */
+  public DocumentCollection(boolean offHeap) {
+    this(offHeap, false);
+  }
+
+  /**
+   * Constructs an empty collection, whose index is optionally stored off-heap
+   * and whose {@link DocumentCollectionCell}s are optionally linked to a doubly
+   * linked list.
+   * 
+   * The {@link Document}s are stored in the circular array either way, so
+   * access by index stays constant time. The links are an additional view,
+   * which costs two references per {@link Document} and is kept up to date by
+   * every modification.
+   * 
+   * @param offHeap <code>true</code>, if the index is to be stored off-heap
+   * @param linked  <code>true</code>, if the cells are to be linked
+   */
+  public DocumentCollection(boolean offHeap, boolean linked) {
+    this(offHeap, linked, null, new Segment[0], new int[0]);
+  }
+
+  /**
+   * Constructs a collection of the {@link Document}s of the specified mapped
+   * segments, e.g. read from an {@link IndexFile} or a
+   * {@link SegmentDirectory}. The {@link Document}s are only read from the
+   * files of the segments when they are needed.
+   * 
+   * {@link Document}s not contained in the order are counted as removed from
+   * the segments.
+   * 
+   * @param offHeap   <code>true</code>, if new segments are to be stored
+   *                  off-heap
+   * @param linked    <code>true</code>, if the cells are to be linked
+   * @param directory the directory the segments are stored in or
+   *                  <code>null</code>
+   * @param segments  the mapped segments, ordered by their base ids
+   * @param order     the order of the {@link Document}s in this collection, as
+   *                  ids
+   */
+  private DocumentCollection(boolean offHeap, boolean linked, SegmentDirectory directory, Segment[] segments,
+      int[] order) {
+    IndexFile lastFile = segments.length == 0 ? null : segments[segments.length - 1].getFile();
+    int numIds = lastFile == null ? 0 : lastFile.getBaseId() + lastFile.getNumIds();
+
+    this.cells = new DocumentCollectionCell[Math.max(16, order.length)];
+    this.head = 0;
+    this.size = order.length;
+    this.linked = linked;
+    this.first = null;
+    this.last = null;
+    this.offHeap = offHeap;
+    this.directory = directory;
+    this.cellsById = new DocumentCollectionCell[Math.max(16, numIds)];
+    this.nextId = numIds;
+    this.version = 0;
+    this.flushedVersion = 0;
+    this.pinnedVersions = new PinnedVersions();
+    this.compactedVersion = 0;
+    this.compactionPending = false;
+    this.parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    this.segmentSize = DEFAULT_SEGMENT_SIZE;
+    this.queryCache = new QueryCache(DEFAULT_QUERY_CACHE_SIZE);
+
+    DocumentCollectionCell[] stored = new DocumentCollectionCell[numIds];
+    for (Segment segment : segments) {
+      IndexFile file = segment.getFile();
+      for (int i = 0; i < file.getNumDocuments(); i++) {
+        stored[file.getDocumentId(i)] = new DocumentCollectionCell(file, i, file.getDocumentId(i));
+      }
+    }
+
+    for (int i = 0; i < order.length; i++) {
+      this.cells[i] = stored[order[i]];
+      this.cellsById[order[i]] = this.cells[i];
+      this.linkLast(this.cells[i]);
+    }
+
+    /* the last segment gets the new documents */
+    this.segments = Arrays.copyOf(segments, segments.length + 1);
+    this.segments[segments.length] = new Segment(new InvertedIndex(offHeap, this.nextId));
+
+    for (int id = 0; id < numIds; id++) {
+      if (stored[id] != null && this.cellsById[id] == null) {
+        this.segmentOf(id).getIndex().removeDocument(id, stored[id].peekDocument().getWordCounts());
+      }
+    }
+
+    if (directory == null) {
+      this.segmentWriter = null;
+    } else {
+      this.segmentWriter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "segment writer");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.setFlushInterval(DEFAULT_FLUSH_INTERVAL);
+    }
+  }
+
+  /**
+   * Reads a collection from the specified index file, which has been written
+   * by {@link DocumentCollection#save(String)}.
+   * 
+   * The file is mapped into memory and its index is used in place, so no
+   * {@link Document} has to be tokenized or stemmed again. A {@link Document}
+   * is only read from the file when it is needed, e.g. as the result of a
+   * query, so opening a file does not depend on its size. The returned
+   * collection can be modified just like any other collection; the index of
+   * {@link Document}s added later is kept on the heap. The mapped index is
+   * never changed: the entries of removed {@link Document}s stay in it until
+   * the collection is written to a new file by
+   * {@link DocumentCollection#save(String)}.
+   * 
+   * @param fileName the name of the index file
+   * @return the collection
+   * @throws IOException if the file could not be read or is not an index file
+   */
+  public static DocumentCollection open(String fileName) throws IOException {
+    return open(fileName, false);
+  }
+
+  /**
+   * Reads a collection from the specified index file, which has been written
+   * by {@link DocumentCollection#save(String)}, just like
+   * {@link DocumentCollection#open(String)}, but optionally stores the index of
+   * {@link Document}s added later off-heap, cf.
+   * {@link DocumentCollection#DocumentCollection(boolean)}.
+   * 
+   * @param fileName the name of the index file
+   * @param offHeap  <code>true</code>, if the index of added {@link Document}s
+   *                 is to be stored off-heap
+   * @return the collection
+   * @throws IOException if the file could not be read or is not an index file
+   */
+  public static DocumentCollection open(String fileName, boolean offHeap) throws IOException {
+    IndexFile file = IndexFile.read(fileName);
+    return new DocumentCollection(offHeap, false, null, new Segment[] { new Segment(file, null) },
+        file.getOrder());
+  }
+
+  /**
+   * Opens the collection stored in the specified directory. If the directory
+   * does not exist or is empty, an empty collection is created there.
+   * 
+   * {@link Document}s added to the collection are collected in memory until
+   * their segment is sealed; then the segment is written to the directory in
+   * the background. Removed {@link Document}s are purged when their segments
+   * are merged. Modifications are persisted by
+   * {@link DocumentCollection#flush()} and {@link DocumentCollection#close()},
+   * whenever a segment has been written and at the latest after the flush
+   * interval, cf. {@link DocumentCollection#setFlushInterval(long)}.
+   * 
+   * @param directory the name of the directory
+   * @return the collection
+   * @throws IOException if the directory could not be read
+   * @see SegmentDirectory
+   */
+  public static DocumentCollection openDirectory(String directory) throws IOException {
+    SegmentDirectory segmentDirectory = new SegmentDirectory(directory);
+    DocumentCollection dc = new DocumentCollection(false, false, segmentDirectory, segmentDirectory.getSegments(),
+        segmentDirectory.getOrder());
+
+    /* purge the documents removed before the directory has been closed */
+    dc.segmentWriter.execute(dc::maintainSegments);
+    return dc;
+  }
+
+  /**
+   * Writes this collection together with its index to the specified file.
+   * 
+   * The {@link Document}s are renumbered on the way, so that removed
+   * {@link Document}s do not take up any space in the file. If the file
+   * exists, it is replaced as a whole, so it may be the file this collection
+   * has been read from.
+   * 
+   * An index file is limited to 2 GB. A larger collection is not written at
+   * all and has to be stored in a directory instead, cf.
+   * {@link DocumentCollection#openDirectory(String)}.
+   * 
+   * @param fileName the name of the index file
+   * @throws IOException if the file could not be written or would exceed
+   *                     2 GB
+   * @see IndexFile
+   */
+  public synchronized void save(String fileName) throws IOException {
+    /* the ids of the documents in order of this collection */
+    int[] ids = new int[this.size];
+    for (int i = 0; i < this.size; i++) {
+      ids[i] = this.cells[this.position(i)].getId();
+    }
+
+    int[] oldIds = ids.clone();
+    Arrays.sort(oldIds);
+
+    Document[] documents = new Document[oldIds.length];
+    int[] newIds = new int[oldIds.length];
+    for (int i = 0; i < oldIds.length; i++) {
+      documents[i] = this.cellsById[oldIds[i]].peekDocument();
+      newIds[i] = i;
+    }
+
+    int[] order = new int[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      order[i] = Arrays.binarySearch(oldIds, ids[i]);
+    }
+
+    IndexFile.write(fileName, documents, oldIds, newIds, order, 0, documents.length, indexesOf(this.segments));
+  }
+
+  /**
+   * Seals the last segment and waits until all sealed segments have been
+   * written to the directory of this collection and the order of the
+   * {@link Document}s has been persisted.
+   * 
+   * If this collection is not stored in a directory, nothing will happen.
+   * 
+   * @throws IOException if a segment or the manifest could not be written, now
+   *                     or before in the background
+   */
+  public void flush() throws IOException {
+    if (this.directory == null) {
+      return;
+    }
+
+    synchronized (this) {
+      if (this.segmentWriter.isShutdown()) {
+        throw new IOException("collection has been closed");
+      }
+
+      this.sealSegment(this.nextId);
+      this.flushedVersion = this.version;
+    }
+
+    try {
+      this.segmentWriter.submit(this::maintainSegments).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while flushing");
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+
+    this.throwSegmentWriterException();
+  }
+
+  /**
+   * Flushes this collection and stops its background thread.
+   * 
+   * Afterwards, the collection can still be queried and modified, but the
+   * modifications are not persisted anymore. If this collection is not stored
+   * in a directory or has already been closed, nothing will happen.
+   * 
+   * @throws IOException if a segment or the manifest could not be written
+   */
+  public void close() throws IOException {
+    if (this.directory == null || this.segmentWriter.isShutdown()) {
+      return;
+    }
+
+    try {
+      this.flush();
+    } finally {
+      this.segmentWriter.shutdown();
+
+      try {
+        this.segmentWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Throws the first exception of the background thread that has not been
+   * reported yet.
+   * 
+   * @throws IOException the exception of the background thread
+   */
+  private synchronized void throwSegmentWriterException() throws IOException {
+    IOException e = this.segmentWriterException;
+
+    if (e != null) {
+      this.segmentWriterException = null;
+      throw e;
+    }
+  }
+
+  /**
+   * Determines, whether new segments of this collection are stored off-heap.
+   * 
+   * @return <code>true</code>, if the index is stored off-heap
+   */
+  public boolean isOffHeap() {
+    return this.offHeap;
+  }
+
+  /**
+   * Returns the number of {@link Document}s from which on queries are scored in
+   * parallel.
+   * 
+   * @return the number of {@link Document}s from which on queries are scored in
+   *         parallel
+   */
+  public int getParallelThreshold() {
+    return this.parallelThreshold;
+  }
+
+  /**
+   * Sets the number of {@link Document}s from which on queries are scored in
+   * parallel.
+   * 
+   * Queries on collections with less {@link Document}s are scored on the calling
+   * thread, since splitting the work does not pay off for them. If the
+   * specified threshold is lower than <code>0</code>, it is set to
+   * <code>0</code>, i.e. every query is scored in parallel.
+   * 
+   * @param parallelThreshold the new threshold
+   */
+  public void setParallelThreshold(int parallelThreshold) {
+    if (parallelThreshold < 0) {
+      this.parallelThreshold = 0;
+    } else {
+      this.parallelThreshold = parallelThreshold;
+    }
+  }
+
+  /**
+   * Returns the number of {@link Document}s from which on the last segment is
+   * sealed and written to the directory of this collection.
+   * 
+   * @return the number of {@link Document}s per segment
+   */
+  public int getSegmentSize() {
+    return this.segmentSize;
+  }
+
+  /**
+   * Sets the number of {@link Document}s from which on the last segment is
+   * sealed and written to the directory of this collection.
+   * 
+   * Only collections stored in a directory are split into segments this way.
+   * If the specified size is lower than <code>1</code>, it is set to
+   * <code>1</code>.
+   * 
+   * @param segmentSize the new number of {@link Document}s per segment
+   */
+  public void setSegmentSize(int segmentSize) {
+    this.segmentSize = Math.max(segmentSize, 1);
+  }
+
+  /**
+   * Returns the number of milliseconds after which modifications of this
+   * collection are persisted to its directory.
+   * 
+   * @return the flush interval or <code>0</code>, if modifications are only
+   *         persisted by flushing explicitly
+   */
+  public synchronized long getFlushInterval() {
+    return this.flushInterval;
+  }
+
+  /**
+   * Sets the number of milliseconds after which modifications of this
+   * collection are persisted to its directory.
+   * 
+   * As long as the collection is modified, the background thread flushes it
+   * once per interval, so {@link Document}s added less than a whole segment
+   * ago are not lost if the program stops. A short interval loses less, but
+   * writes more small segments, which are merged later. If the specified
+   * interval is lower than <code>1</code>, modifications are only persisted
+   * by {@link DocumentCollection#flush()}, {@link DocumentCollection#close()}
+   * and whenever a segment has become large enough. If this collection is not
+   * stored in a directory, nothing will happen.
+   * 
+   * @param flushInterval the new flush interval in milliseconds
+   */
+  public synchronized void setFlushInterval(long flushInterval) {
+    if (this.directory == null) {
+      return;
+    }
+
+    this.flushInterval = Math.max(flushInterval, 0);
+
+    if (this.periodicFlush != null) {
+      this.periodicFlush.cancel(false);
+      this.periodicFlush = null;
+    }
+
+    if (this.flushInterval > 0 && !this.segmentWriter.isShutdown()) {
+      this.periodicFlush = this.segmentWriter.scheduleWithFixedDelay(this::flushPeriodically,
+          this.flushInterval, this.flushInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Returns the maximum number of query results cached by this collection.
+   * 
+   * @return the maximum number of cached query results
+   */
+  public int getQueryCacheSize() {
+    return this.queryCache.getCapacity();
+  }
+
+  /**
+   * Sets the maximum number of query results cached by this collection.
+   * 
+   * Repeating one of the most recent queries returns the cached result, as
+   * long as the collection has not been modified in the meantime. If the
+   * specified size is lower than <code>1</code>, no results are cached at all.
+   * 
+   * @param queryCacheSize the new maximum number of cached query results
+   */
+  public void setQueryCacheSize(int queryCacheSize) {
+    this.queryCache.setCapacity(queryCacheSize);
+  }
+
+  /**
+   * Returns the current segments of the index of this collection, ordered by
+   * their base ids.
+   * 
+   * @return the segments
+   */
+  Segment[] getSegments() {
+    return this.segments;
+  }
+
+  /**
+   * Returns the indexes of the specified segments.
+   * 
+   * @param segments the segments
+   * @return the indexes of the segments in the same order
+   */
+  private static InvertedIndex[] indexesOf(Segment[] segments) {
+    InvertedIndex[] indexes = new InvertedIndex[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      indexes[i] = segments[i].getIndex();
+    }
+    return indexes;
+  }
+
+  /**
+   * Returns the segment containing the {@link Document} with the specified id.
+   * 
+   * @param documentId the id of the document
+   * @return the segment containing the document
+   */
+  private Segment segmentOf(int documentId) {
+    Segment[] segments = this.segments;
+
+    /* the segments are ordered, so we can use binary search */
+    int low = 0;
+    int high = segments.length - 1;
+
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+
+      if (segments[mid].getBaseId() <= documentId) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    return segments[low];
+  }
+
+  /**
+   * Seals the last segment, if it contains any {@link Document}, and starts a
+   * new one with the specified base id. The sealed segment is written to the
+   * directory in the background.
+   * 
+   * @param baseId the id of the first {@link Document} of the new segment
+   */
+  private void sealSegment(int baseId) {
+    Segment[] segments = this.segments;
+
+    if (segments[segments.length - 1].getBaseId() == baseId) {
+      return;
+    }
+
+    Segment[] newSegments = Arrays.copyOf(segments, segments.length + 1);
+    newSegments[segments.length] = new Segment(new InvertedIndex(this.offHeap, baseId));
+    this.segments = newSegments;
+    this.scheduleMaintenance();
+  }
+
+  /**
+   * Lets the background thread maintain the segments, unless it is already
+   * going to, cf. {@link DocumentCollection#maintainSegments()}.
+   */
+  private void scheduleMaintenance() {
+    if (!this.maintenancePending && !this.segmentWriter.isShutdown()) {
+      this.maintenancePending = true;
+      this.segmentWriter.execute(this::maintainSegments);
+    }
+  }
+
+  /**
+   * Seals the last segment and lets the background thread maintain the
+   * segments, if this collection has been modified since the last flush. Runs
+   * on the background thread once per flush interval.
+   */
+  private synchronized void flushPeriodically() {
+    if (this.version != this.flushedVersion) {
+      this.sealSegment(this.nextId);
+      this.scheduleMaintenance();
+      this.flushedVersion = this.version;
+    }
+  }
+
+  /**
+   * Writes all sealed segments kept in memory to the directory, merges stored
+   * segments if necessary and writes the manifest. Runs on the background
+   * thread.
+   */
+  private void maintainSegments() {
+    /* segments sealed or changed from now on need another run */
+    this.maintenancePending = false;
+    List<Segment> replaced = new ArrayList<Segment>();
+
+    try {
+      this.storeSealedSegments(replaced);
+      this.mergeStoredSegments(replaced);
+
+      /* the manifest may only list stored segments and their documents */
+      Segment[] stored;
+      int[] order;
+      synchronized (this) {
+        Segment[] segments = this.segments;
+        int numStored = 0;
+        while (numStored < segments.length && segments[numStored].isStored()) {
+          numStored++;
+        }
+
+        stored = Arrays.copyOf(segments, numStored);
+        int storedIds = segments[numStored].getBaseId();
+
+        int numOrdered = 0;
+        order = new int[this.size];
+        for (int i = 0; i < this.size; i++) {
+          int id = this.cells[this.position(i)].getId();
+          if (id < storedIds) {
+            order[numOrdered] = id;
+            numOrdered++;
+          }
+        }
+        order = Arrays.copyOf(order, numOrdered);
+      }
+
+      this.directory.writeManifest(stored, order);
+
+      /* only now the replaced segments are not needed anymore */
+      for (Segment segment : replaced) {
+        if (segment.isStored()) {
+          this.directory.deleteSegment(segment);
+        }
+      }
+    } catch (IOException e) {
+      synchronized (this) {
+        if (this.segmentWriterException == null) {
+          this.segmentWriterException = e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes every sealed segment kept in memory to the directory, oldest first.
+   * Runs on the background thread.
+   * 
+   * @param replaced collects the segments that have been replaced
+   * @throws IOException if a segment could not be written
+   */
+  private void storeSealedSegments(List<Segment> replaced) throws IOException {
+    while (true) {
+      int position;
+      synchronized (this) {
+        Segment[] segments = this.segments;
+
+        /* the last segment is never sealed */
+        position = 0;
+        while (position < segments.length - 1 && segments[position].isStored()) {
+          position++;
+        }
+
+        if (position == segments.length - 1) {
+          return;
+        }
+      }
+
+      this.rewriteSegments(position, position + 1, replaced);
+    }
+  }
+
+  /**
+   * Merges stored segments: a segment with more removed than live entries is
+   * rewritten on its own, and as long as there are too many stored segments,
+   * the two neighbouring segments with the least live entries are merged. Runs
+   * on the background thread.
+   * 
+   * @param replaced collects the segments that have been replaced
+   * @throws IOException if a segment could not be written
+   */
+  private void mergeStoredSegments(List<Segment> replaced) throws IOException {
+    while (true) {
+      int from = -1;
+      int to = -1;
+
+      synchronized (this) {
+        Segment[] segments = this.segments;
+        int numStored = 0;
+        while (numStored < segments.length && segments[numStored].isStored()) {
+          numStored++;
+        }
+
+        for (int i = 0; i < numStored && from == -1; i++) {
+          InvertedIndex index = segments[i].getIndex();
+          if (2 * index.getNumRemovedEntries() > index.getNumEntries()) {
+            from = i;
+            to = i + 1;
+          }
+        }
+
+        if (from == -1 && numStored > MAX_STORED_SEGMENTS) {
+          int minEntries = Integer.MAX_VALUE;
+          for (int i = 0; i + 1 < numStored; i++) {
+            int entries = segments[i].getNumLiveEntries() + segments[i + 1].getNumLiveEntries();
+            if (entries < minEntries) {
+              minEntries = entries;
+              from = i;
+              to = i + 2;
+            }
+          }
+        }
+      }
+
+      if (from == -1) {
+        return;
+      }
+
+      this.rewriteSegments(from, to, replaced);
+    }
+  }
+
+  /**
+   * Writes the live {@link Document}s of the segments at the specified
+   * positions into a new stored segment, which replaces them. Runs on the
+   * background thread, which is the only one replacing segments, so the
+   * positions stay valid while the segment is written.
+   * 
+   * The {@link Document}s and the postings lists of the segments are taken
+   * under the lock at the same time, so a compaction while the segment is
+   * written cannot purge any entry that is written. Only the {@link Document}s
+   * removed after that are removed from the new segment again.
+   * 
+   * @param from     the position of the first segment, inclusive
+   * @param to       the position of the last segment, exclusive
+   * @param replaced collects the segments that have been replaced
+   * @throws IOException if the segment could not be written
+   */
+  private void rewriteSegments(int from, int to, List<Segment> replaced) throws IOException {
+    Segment[] oldSegments;
+    InvertedIndex[] indexes;
+    int baseId;
+    int endId;
+    Document[] documents;
+    int[] ids;
+
+    synchronized (this) {
+      Segment[] segments = this.segments;
+      oldSegments = Arrays.copyOfRange(segments, from, to);
+
+      indexes = new InvertedIndex[to - from];
+      for (int i = 0; i < indexes.length; i++) {
+        indexes[i] = oldSegments[i].getIndex().snapshot();
+      }
+
+      baseId = segments[from].getBaseId();
+      endId = segments[to].getBaseId();
+
+      int numDocuments = 0;
+      for (int id = baseId; id < endId; id++) {
+        if (this.isLive(id)) {
+          numDocuments++;
+        }
+      }
+
+      documents = new Document[numDocuments];
+      ids = new int[numDocuments];
+      numDocuments = 0;
+      for (int id = baseId; id < endId; id++) {
+        if (this.isLive(id)) {
+          documents[numDocuments] = this.cellsById[id].peekDocument();
+          ids[numDocuments] = id;
+          numDocuments++;
+        }
+      }
+    }
+
+    /* the segments are written without holding the lock */
+    Segment segment = this.directory.writeSegment(documents, ids, baseId, endId - baseId, indexes);
+
+    synchronized (this) {
+      /* documents removed while the segment has been written, the others are read from the new file */
+      for (int i = 0; i < ids.length; i++) {
+        if (!this.isLive(ids[i])) {
+          segment.getIndex().removeDocument(ids[i], documents[i].getWordCounts());
+        } else {
+          this.cellsById[ids[i]].moveTo(segment.getFile(), i);
+        }
+      }
+
+      Segment[] segments = this.segments;
+      Segment[] newSegments = new Segment[segments.length - (to - from) + 1];
+      System.arraycopy(segments, 0, newSegments, 0, from);
+      newSegments[from] = segment;
+      System.arraycopy(segments, to, newSegments, from + 1, segments.length - to);
+      this.segments = newSegments;
+
+      this.purgeRemovedCells(this.pinnedVersions.oldest(this.version));
+    }
+
+    replaced.addAll(Arrays.asList(oldSegments));
+  }
+
+  /**
+   * Determines, whether the {@link Document} with the specified id has been
+   * added to and not removed from this collection.
+   * 
+   * @param documentId the id of the document
+   * @return <code>true</code>, if the {@link Document} is part of this
+   *         collection
+   */
+  private boolean isLive(int documentId) {
+    DocumentCollectionCell cell = this.cellsById[documentId];
+    return cell != null && cell.getRemovedIn() == Long.MAX_VALUE;
+  }
+
+  /**
+   * Creates a new {@link DocumentCollectionCell} for the specified
+   * {@link Document} with a new id, adds the {@link Document} to the index and
+   * publishes it.
+   * 
+   * @param doc the {@link Document}
+   * @return the new {@link DocumentCollectionCell}
+   */
+  private DocumentCollectionCell createCell(Document doc) {
+    DocumentCollectionCell cell = this.indexDocument(doc, this.nextId);
+    this.publish(cell.getId() + 1);
+    return cell;
+  }
+
+  /**
+   * Creates a new {@link DocumentCollectionCell} for the specified
+   * {@link Document} with the specified id and adds the {@link Document} to
+   * the index. The {@link Document} stays invisible to queries until it is
+   * published by {@link DocumentCollection#publish(int)}.
+   * 
+   * If this collection is stored in a directory and the last segment has
+   * become large enough, it is sealed.
+   * 
+   * @param doc the {@link Document}
+   * @param id  the id of the {@link Document}, which must not have been handed
+   *            out before
+   * @return the new {@link DocumentCollectionCell}
+   */
+  private DocumentCollectionCell indexDocument(Document doc, int id) {
+    DocumentCollectionCell cell = new DocumentCollectionCell(doc, id);
+
+    /* if we have reached the end of the array, increase the array size far enough for the id */
+    if (cell.getId() >= this.cellsById.length) {
+      DocumentCollectionCell[] newCellsById = new DocumentCollectionCell[Math.max(cell.getId() + 1,
+          this.cellsById.length * 2)];
+      System.arraycopy(this.cellsById, 0, newCellsById, 0, this.cellsById.length);
+      this.cellsById = newCellsById;
+    }
+
+    Segment last = this.segments[this.segments.length - 1];
+    this.cellsById[cell.getId()] = cell;
+    last.getIndex().addDocument(cell.getId(), doc.getWordCounts());
+
+    /* growing postings lists give up their regions */
+    this.compactIfNeeded();
+
+    if (this.directory != null && cell.getId() + 1 - last.getBaseId() >= this.segmentSize) {
+      this.sealSegment(cell.getId() + 1);
+    }
+
+    return cell;
+  }
+
+  /**
+   * Makes all {@link Document}s indexed with an id lower than the specified
+   * one visible to new queries at once and drops the cached query results.
+   * 
+   * @param nextId the id of the next {@link Document} to add
+   */
+  private void publish(int nextId) {
+    this.nextId = nextId;
+    this.version = this.version + 1;
+    this.queryCache.invalidate(this.version);
+  }
+
+  /**
+   * Removes the {@link Document} of the specified cell from the index.
+   * 
+   * Queries working on a snapshot taken before still see the {@link Document}.
+   * If the {@link Document} leaves a stored segment with more removed than
+   * live entries, the segment is rewritten in the background.
+   * 
+   * @param cell the {@link DocumentCollectionCell} being removed
+   */
+  private void dropCell(DocumentCollectionCell cell) {
+    /* mark the cell before publishing the new version */
+    cell.setRemovedIn(this.version + 1);
+    this.version = this.version + 1;
+
+    Segment segment = this.segmentOf(cell.getId());
+    segment.getIndex().removeDocument(cell.getId(), cell.peekDocument().getWordCounts());
+    this.queryCache.invalidate(this.version);
+    this.compactIfNeeded();
+
+    /* a stored segment is purged by rewriting it in the background */
+    InvertedIndex index = segment.getIndex();
+    if (segment.isStored() && 2 * index.getNumRemovedEntries() > index.getNumEntries()) {
+      this.scheduleMaintenance();
+    }
+  }
+
+  /**
+   * Purges the removed {@link Document}s from the segments kept in memory, if
+   * they make up more than half of these segments, and releases the regions
+   * given up by growing postings lists, if they make up more than a third of
+   * the memory of these segments, cf. {@link PostingsArena}. Mapped segments
+   * are never compacted: stored segments are purged by merging them in the
+   * background, the segment of an opened {@link IndexFile} by saving the
+   * collection.
+   * 
+   * Only {@link Document}s removed up to the oldest version a running query
+   * is working on are purged, since they are invisible to every running query
+   * and every query started from now on. If that is not enough, the rest is
+   * purged on a background thread as soon as the oldest version is released,
+   * cf. {@link DocumentCollection#match(String, int, Scoring)}.
+   */
+  private void compactIfNeeded() {
+    this.compactionPending = false;
+
+    if (!this.needsCompaction()) {
+      return;
+    }
+
+    long oldestVersion = this.pinnedVersions.oldest(this.version);
+
+    /* something new can only be purged, if the oldest version has advanced */
+    if (oldestVersion > this.compactedVersion || this.wastesMemory()) {
+      Segment[] segments = this.segments;
+      DocumentCollectionCell[] cellsById = this.cellsById;
+      for (int i = 0; i < segments.length; i++) {
+        if (!segments[i].isMapped()) {
+          segments[i].getIndex()
+              .compact(id -> cellsById[id] == null || cellsById[id].getRemovedIn() <= oldestVersion);
+        }
+      }
+
+      this.purgeRemovedCells(oldestVersion);
+      this.compactedVersion = oldestVersion;
+    }
+
+    if (this.needsCompaction()) {
+      this.compactionPending = true;
+
+      /* the oldest version may have been released before the flag was set */
+      if (this.pinnedVersions.oldest(this.version) > oldestVersion) {
+        this.scheduleCompaction();
+      }
+    }
+  }
+
+  /**
+   * Determines, whether the removed {@link Document}s make up more than half
+   * of the segments kept in memory, or the regions given up by growing
+   * postings lists more than a third of their memory.
+   * 
+   * @return <code>true</code>, if the segments kept in memory are to be
+   *         compacted
    */
-  private DocumentCollectionCell first;
+  private boolean needsCompaction() {
+    Segment[] segments = this.segments;
+
+    long numEntries = 0;
+    long numRemovedEntries = 0;
+    for (int i = 0; i < segments.length; i++) {
+      if (!segments[i].isMapped()) {
+        numEntries += segments[i].getIndex().getNumEntries();
+        numRemovedEntries += segments[i].getIndex().getNumRemovedEntries();
+      }
+    }
+
+    return 2 * numRemovedEntries > numEntries || this.wastesMemory();
+  }
 
   /**
-   * the last element in the collection
+   * Determines, whether the regions given up by growing postings lists make
+   * up more than a third of the memory of the segments kept in memory. Unlike
+   * removed {@link Document}s, they can be released at any time, no matter
+   * which versions running queries are working on.
+   * 
+   * @return <code>true</code>, if the segments kept in memory are to be
+   *         compacted to release memory
    */
-  private DocumentCollectionCell last;
+  private boolean wastesMemory() {
+    Segment[] segments = this.segments;
+
+    long numAllocatedBytes = 0;
+    long numAbandonedBytes = 0;
+    for (int i = 0; i < segments.length; i++) {
+      if (!segments[i].isMapped()) {
+        numAllocatedBytes += segments[i].getIndex().getNumAllocatedBytes();
+        numAbandonedBytes += segments[i].getIndex().getNumAbandonedBytes();
+      }
+    }
+
+    /* lists growing by doubling give up about a third of the memory allocated since the last compaction */
+    return numAbandonedBytes >= MIN_ABANDONED_BYTES && 3 * numAbandonedBytes > numAllocatedBytes;
+  }
 
   /**
-   * the number of elements in this collection
+   * Runs a pending compaction on a background thread, so that no query has to
+   * wait for it.
    */
-  private int size;
+  private void scheduleCompaction() {
+    ForkJoinPool.commonPool().execute(() -> {
+      synchronized (this) {
+        if (this.compactionPending) {
+          this.compactIfNeeded();
+        }
+      }
+    });
+  }
 
   /**
-   * Constructs an empty collection
+   * Purges the cells of the {@link Document}s removed up to the specified
+   * version from the id table. The cells are purged from a copy of the id
+   * table, so snapshots taken before and {@link QueryResult}s of earlier
+   * queries can still look up their {@link Document}s.
+   * 
+   * @param version the version up to which removed {@link Document}s are
+   *                purged
    */
-  public DocumentCollection() {
-    this.first = null;
-    this.last = null;
-    this.size = 0;
+  private void purgeRemovedCells(long version) {
+    DocumentCollectionCell[] cellsById = this.cellsById;
+    DocumentCollectionCell[] newCellsById = new DocumentCollectionCell[cellsById.length];
+
+    /* including the documents of a bulk insertion that have not been published yet */
+    for (int id = 0; id < cellsById.length; id++) {
+      if (cellsById[id] != null && cellsById[id].getRemovedIn() > version) {
+        newCellsById[id] = cellsById[id];
+      }
+    }
+
+    this.cellsById = newCellsById;
+  }
+
+  /**
+   * Takes a snapshot of this collection, which is not affected by subsequent
+   * modifications.
+   * 
+   * @return a snapshot of this collection
+   */
+  private CollectionSnapshot snapshot() {
+    while (true) {
+      /*
+       * read the version first: a document removed up to this version is
+       * already marked, a document added later than this version is fully
+       * indexed, if its id is lower than nextId
+       */
+      long version = this.version;
+      int numIds = this.nextId;
+      DocumentCollectionCell[] cellsById = this.cellsById;
+      Segment[] segments = this.segments;
+
+      /*
+       * segments and cells are only purged of documents removed before, so if
+       * nothing has been removed meanwhile, they still contain every document
+       * of the version
+       */
+      if (this.version == version) {
+        return new CollectionSnapshot(version, numIds, cellsById, segments);
+      }
+    }
+  }
+
+  /**
+   * Returns the position in the array of cells of the element at the specified
+   * index.
+   * 
+   * @param index the index of the element
+   * @return the position of the element in the array of cells
+   */
+  private int position(int index) {
+    return (this.head + index) % this.cells.length;
+  }
+
+  /**
+   * Doubles the size of the array of cells, if it is full.
+   */
+  private void ensureCapacity() {
+    if (this.size < this.cells.length) {
+      return;
+    }
+
+    /* copy the elements in order, starting at position 0 */
+    DocumentCollectionCell[] newCells = new DocumentCollectionCell[this.cells.length * 2];
+    for (int i = 0; i < this.size; i++) {
+      newCells[i] = this.cells[this.position(i)];
+    }
+
+    this.cells = newCells;
+    this.head = 0;
   }
 
   /**
@@ -38,20 +1266,17 @@ public class DocumentCollection {
    * 
    * @param doc the {@link Document} to add
    */
-  public void prependDocument(Document doc) {
+  public synchronized void prependDocument(Document doc) {
     if (doc == null) {
       return;
     }
 
-    if (this.isEmpty()) {
-      /* list empty, add as one and only element */
-      this.first = new DocumentCollectionCell(doc, null, null);
-      this.last = first;
-    } else {
-      first.setPrevious(new DocumentCollectionCell(doc, null, first));
-      this.first = first.getPrevious();
-    }
+    this.ensureCapacity();
 
+    /* the new element goes in front of the first one */
+    this.head = (this.head + this.cells.length - 1) % this.cells.length;
+    this.cells[this.head] = this.createCell(doc);
+    this.linkFirst(this.cells[this.head]);
     size++;
   }
 
@@ -62,23 +1287,104 @@ public class DocumentCollection {
    * 
    * @param doc the {@link Document} to add
    */
-  public void appendDocument(Document doc) {
+  public synchronized void appendDocument(Document doc) {
     if (doc == null) {
       return;
     }
 
-    if (this.isEmpty()) {
-      /* list empty, add as only element */
-      this.first = new DocumentCollectionCell(doc, null, null);
-      this.last = first;
-    } else {
-      last.setNext(new DocumentCollectionCell(doc, last, null));
-      last = last.getNext();
-    }
+    this.ensureCapacity();
 
+    this.cells[this.position(size)] = this.createCell(doc);
+    this.linkLast(this.cells[this.position(size)]);
     size++;
   }
 
+  /**
+   * Creates a {@link Document} for every pair of title and content and inserts
+   * the {@link Document}s at the end of the collection, in the given order.
+   * 
+   * The contents are tokenized and stemmed in parallel on all available
+   * processors. Only after all {@link Document}s have been created, they are
+   * added to this collection and its index and become visible to queries at
+   * once.
+   * 
+   * If one of the arrays is <code>null</code> or if they differ in length,
+   * nothing will happen.
+   * 
+   * @param titles   the titles of the documents
+   * @param contents the text contents of the documents
+   */
+  public void addAll(String[] titles, String[] contents) {
+    if (titles == null || contents == null || titles.length != contents.length) {
+      return;
+    }
+
+    Document[] docs = new Document[contents.length];
+
+    /* every document is tokenized and stemmed independently */
+    IntStream.range(0, docs.length).parallel()
+        .forEach(i -> docs[i] = new Document(titles[i], "", "", null, null, contents[i]));
+
+    this.appendDocuments(docs);
+  }
+
+  /**
+   * Creates a {@link Document} from every specified file and inserts the
+   * {@link Document}s at the end of the collection, in the given order.
+   * 
+   * The files are read, tokenized and stemmed in parallel on all available
+   * processors, cf. {@link Document#createDocumentFromFile(String)}. Files that
+   * cannot be read are skipped. Only after all {@link Document}s have been
+   * created, they are added to this collection and its index and become
+   * visible to queries at once.
+   * 
+   * @param fileNames the names of the files
+   */
+  public void addAllFromFiles(String[] fileNames) {
+    if (fileNames == null) {
+      return;
+    }
+
+    Document[] docs = new Document[fileNames.length];
+
+    /* every file is read, tokenized and stemmed independently */
+    IntStream.range(0, docs.length).parallel()
+        .forEach(i -> docs[i] = Document.createDocumentFromFile(fileNames[i]));
+
+    this.appendDocuments(docs);
+  }
+
+  /**
+   * Inserts the specified {@link Document}s at the end of the collection.
+   * 
+   * All {@link Document}s are indexed first and then published at once, so a
+   * query sees either none or all of them.
+   * 
+   * <code>null</code> elements are skipped.
+   * 
+   * @param docs the {@link Document}s to add
+   */
+  private synchronized void appendDocuments(Document[] docs) {
+    int id = this.nextId;
+
+    for (int i = 0; i < docs.length; i++) {
+      if (docs[i] == null) {
+        continue;
+      }
+
+      this.ensureCapacity();
+
+      this.cells[this.position(size)] = this.indexDocument(docs[i], id);
+      this.linkLast(this.cells[this.position(size)]);
+      size++;
+      id++;
+    }
+
+    if (id != this.nextId) {
+      this.publish(id);
+    }
+  }
+
   /**
    * Returns the index in this collection of the specified {@link Document}.
    * 
@@ -90,23 +1396,16 @@ public class DocumentCollection {
    * @param doc the {@link Document} to look for
    * @return the index in this collection of the specified document
    */
-  public int indexOf(Document doc) {
+  public synchronized int indexOf(Document doc) {
     if (doc == null || this.isEmpty()) {
       return -1;
     }
 
-    /* loop over list and find document */
-
-    DocumentCollectionCell tmp = this.first;
-    int index = 0;
-
-    while (tmp != null) {
-      if (tmp.getDocument().equals(doc)) {
+    /* loop over array and find document */
+    for (int index = 0; index < this.size; index++) {
+      if (this.cells[this.position(index)].getDocument().equals(doc)) {
         return index;
       }
-
-      tmp = tmp.getNext();
-      index++;
     }
 
     return -1;
@@ -120,7 +1419,7 @@ public class DocumentCollection {
    * @return <code>true</code>, if the specified {@link Document} is contained in
    *         this collection
    */
-  public boolean contains(Document doc) {
+  public synchronized boolean contains(Document doc) {
     return (this.indexOf(doc) != -1);
   }
 
@@ -132,7 +1431,7 @@ public class DocumentCollection {
    * 
    * @param index the index of the element to be deleted
    */
-  public boolean remove(int index) {
+  public synchronized boolean remove(int index) {
     if (index < 0 || index >= this.numDocuments()) {
       return false;
     }
@@ -141,34 +1440,30 @@ public class DocumentCollection {
       return false;
     }
 
-    /* remove first */
-    if (index == 0) {
-      this.removeFirstDocument();
-      return true;
-    }
-
-    /* remove last */
-    if (index == this.numDocuments() - 1) {
-      this.removeLastDocument();
+    /* one element: clear array and return */
+    if (this.numDocuments() == 1) {
+      this.clear();
       return true;
     }
 
-    /* we will only get here, if index >= 1 and size >= 2 */
+    DocumentCollectionCell cell = this.getDocumentCollectionCell(index);
+    this.dropCell(cell);
+    this.unlink(cell);
 
-    /* loop to index, keep track of previous */
-    DocumentCollectionCell actual = this.first.getNext();
-    DocumentCollectionCell prev = this.first;
-    int i = 1;
-
-    while (i < index) {
-      prev = actual;
-      actual = actual.getNext();
-      i++;
+    /* close the gap by moving the shorter side */
+    if (index < this.size / 2) {
+      for (int i = index; i > 0; i--) {
+        this.cells[this.position(i)] = this.cells[this.position(i - 1)];
+      }
+      this.cells[this.head] = null;
+      this.head = this.position(1);
+    } else {
+      for (int i = index; i < this.size - 1; i++) {
+        this.cells[this.position(i)] = this.cells[this.position(i + 1)];
+      }
+      this.cells[this.position(this.size - 1)] = null;
     }
 
-    /* delete actual */
-    prev.setNext(actual.getNext());
-    prev.getNext().setPrevious(prev);
     size--;
     return true;
   }
@@ -179,21 +1474,12 @@ public class DocumentCollection {
    * If the collection is empty, nothing will happen. If the collection has size
    * <code>1</code>, the collection will be empty afterwards.
    */
-  public void removeLastDocument() {
+  public synchronized void removeLastDocument() {
     if (this.isEmpty()) {
       return;
     }
 
-    /* one element: clear list and return */
-    if (this.numDocuments() == 1) {
-      this.clear();
-      return;
-    }
-
-    /* remove last element */
-    this.last = this.last.getPrevious();
-    this.last.setNext(null);
-    size--;
+    this.remove(this.numDocuments() - 1);
   }
 
   /**
@@ -202,21 +1488,12 @@ public class DocumentCollection {
    * If the collection is empty, nothing will happen. If the collection has size
    * <code>1</code>, the collection will be empty afterwards.
    */
-  public void removeFirstDocument() {
+  public synchronized void removeFirstDocument() {
     if (this.isEmpty()) {
       return;
     }
 
-    /* one element: clear list and return */
-    if (this.numDocuments() == 1) {
-      this.clear();
-      return;
-    }
-
-    /* remove first element */
-    this.first = this.first.getNext();
-    this.first.setPrevious(null);
-    size--;
+    this.remove(0);
   }
 
   /**
@@ -226,12 +1503,12 @@ public class DocumentCollection {
    * @return the first element of the collection or <code>null</code>, if it is
    *         empty
    */
-  public Document getFirstDocument() {
+  public synchronized Document getFirstDocument() {
     if (this.isEmpty()) {
       return null;
     }
 
-    return this.first.getDocument();
+    return this.getDocumentCollectionCell(0).getDocument();
   }
 
   /**
@@ -241,30 +1518,135 @@ public class DocumentCollection {
    * @return the last element of the collection or <code>null</code>, if it is
    *         empty
    */
-  public Document getLastDocument() {
+  public synchronized Document getLastDocument() {
     if (this.isEmpty()) {
       return null;
     }
 
-    return this.last.getDocument();
+    return this.getDocumentCollectionCell(this.size - 1).getDocument();
   }
 
   /**
    * Deletes all elements from the collection.
    */
   private void clear() {
-    this.first = null;
-    this.last = null;
+    for (int i = 0; i < this.size; i++) {
+      this.dropCell(this.cells[this.position(i)]);
+      this.unlink(this.cells[this.position(i)]);
+    }
+
+    this.cells = new DocumentCollectionCell[16];
+    this.head = 0;
     this.size = 0;
   }
 
+  /**
+   * Determines, whether the {@link DocumentCollectionCell}s of this collection
+   * are linked to a doubly linked list.
+   * 
+   * @return <code>true</code>, if the cells are linked
+   */
+  public boolean isLinked() {
+    return this.linked;
+  }
+
+  /**
+   * Returns the first {@link DocumentCollectionCell} of a linked collection,
+   * from which on the collection can be walked by
+   * {@link DocumentCollectionCell#getNext()}.
+   * 
+   * @return the first cell or <code>null</code>, if the collection is empty or
+   *         not linked
+   */
+  public synchronized DocumentCollectionCell getFirstCell() {
+    return this.first;
+  }
+
+  /**
+   * Returns the last {@link DocumentCollectionCell} of a linked collection,
+   * from which on the collection can be walked backwards by
+   * {@link DocumentCollectionCell#getPrevious()}.
+   * 
+   * @return the last cell or <code>null</code>, if the collection is empty or
+   *         not linked
+   */
+  public synchronized DocumentCollectionCell getLastCell() {
+    return this.last;
+  }
+
+  /**
+   * Links the specified cell in front of the first cell, if the collection is
+   * linked.
+   * 
+   * @param cell the new first cell
+   */
+  private void linkFirst(DocumentCollectionCell cell) {
+    if (!this.linked) {
+      return;
+    }
+
+    cell.setNext(this.first);
+    if (this.first == null) {
+      this.last = cell;
+    } else {
+      this.first.setPrevious(cell);
+    }
+    this.first = cell;
+  }
+
+  /**
+   * Links the specified cell behind the last cell, if the collection is
+   * linked.
+   * 
+   * @param cell the new last cell
+   */
+  private void linkLast(DocumentCollectionCell cell) {
+    if (!this.linked) {
+      return;
+    }
+
+    cell.setPrevious(this.last);
+    if (this.last == null) {
+      this.first = cell;
+    } else {
+      this.last.setNext(cell);
+    }
+    this.last = cell;
+  }
+
+  /**
+   * Takes the specified cell out of the list, if the collection is linked.
+   * 
+   * @param cell the cell to take out
+   */
+  private void unlink(DocumentCollectionCell cell) {
+    if (!this.linked) {
+      return;
+    }
+
+    if (cell.getPrevious() == null) {
+      this.first = cell.getNext();
+    } else {
+      cell.getPrevious().setNext(cell.getNext());
+    }
+
+    if (cell.getNext() == null) {
+      this.last = cell.getPrevious();
+    } else {
+      cell.getNext().setPrevious(cell.getPrevious());
+    }
+
+    cell.setPrevious(null);
+    cell.setNext(null);
+  }
+
   /**
    * Determines, whether this collection is empty.
    * 
    * @return <code>true</code>, if this collection is empty, <code>false</code>
    *         otherwise
    */
-  public boolean isEmpty() {
+  public synchronized boolean isEmpty() {
     return this.size == 0;
   }
 
@@ -273,7 +1655,7 @@ public class DocumentCollection {
    * 
    * @return the number of {@link Document}s in this collection
    */
-  public int numDocuments() {
+  public synchronized int numDocuments() {
     return this.size;
   }
 
@@ -286,7 +1668,7 @@ public class DocumentCollection {
    * @return the {@link Document} at index <code>index</code> or
    *         <code>null</code>, if the specified index is invalid
    */
-  public Document get(int index) {
+  public synchronized Document get(int index) {
     if (index < 0 || index >= this.size) {
       return null;
     }
@@ -295,218 +1677,403 @@ public class DocumentCollection {
   }
 
   /**
-   * This method returns a {@link WordCountsArray} containing all words of all
-   * {@link Document}s in this collection.
-   * 
-   * Note, that no word will be contained twice in the resulting
-   * {@link WordCountsArray}. The count of every word in the resulting
-   * {@link WordCountsArray} will be <code>0</code>.
+   * This method calculates the similarity between the specified query and all
+   * {@link Document}s in this {@link DocumentCollection} and returns all
+   * {@link Document}s sharing at least one word with the query, ordered
+   * descending by their similarity.
+   *
+   * {@link Document}s sharing no word with the query have a similarity of
+   * <code>0</code> and are left out, so the result usually contains less than
+   * {@link DocumentCollection#numDocuments()} {@link Document}s and is empty
+   * for a query sharing no word with any {@link Document}. This collection is
+   * left untouched, cf. {@link DocumentCollection#match(String, int, Scoring)}.
    * 
-   * @return a {@link WordCountsArray} containing all words of all
-   *         {@link Document}s in this collection
+   * @param searchQuery the query String
+   * @return the {@link Document}s sharing at least one word with the query, the
+   *         most similar first
    */
-  private WordCountsArray allWords() {
-    /*
-     * loop over all documents to create a WordCountsArray containing *all* words of
-     * all documents
-     */
-    DocumentCollectionCell tmp = this.first;
-
-    WordCountsArray allWords = new WordCountsArray(0);
-
-    while (tmp != null) {
-      Document doc = tmp.getDocument();
-      WordCountsArray wca = doc.getWordCounts();
-
-      for (int i = 0; i < wca.size(); i++) {
-        allWords.add(wca.getWord(i), 0);
-      }
-
-      tmp = tmp.getNext();
-    }
+  public QueryResult match(String searchQuery) {
+    return this.match(searchQuery, Integer.MAX_VALUE);
+  }
 
-    return allWords;
+  /**
+   * This method calculates the similarity between the specified query and all
+   * {@link Document}s in this {@link DocumentCollection} and returns the
+   * <code>k</code> most similar {@link Document}s.
+   * 
+   * Only {@link Document}s sharing at least one word with the query can be
+   * part of the result, so the result may contain less than <code>k</code>
+   * {@link Document}s. This collection is left untouched.
+   * 
+   * The similarity is the cosine of the angle between the word count vectors,
+   * cf. {@link DocumentCollection#match(String, int, Scoring)}.
+   * 
+   * @param searchQuery the query String
+   * @param k           the maximum number of {@link Document}s in the result
+   * @return the <code>k</code> most similar {@link Document}s, the most similar
+   *         first
+   */
+  public QueryResult match(String searchQuery, int k) {
+    return this.match(searchQuery, k, Scoring.COSINE);
   }
 
   /**
    * This method calculates the similarity between the specified query and all
-   * {@link Document}s in this {@link DocumentCollection} and sorts the
-   * {@link Document}s in this collection according to the calculated similarity.
+   * {@link Document}s in this {@link DocumentCollection} using the specified
+   * {@link Scoring} and returns the <code>k</code> most similar
+   * {@link Document}s.
+   * 
+   * Only {@link Document}s sharing at least one word with the query can be
+   * part of the result, so the result may contain less than <code>k</code>
+   * {@link Document}s. Words of the query no {@link Document} contains only
+   * make the query vector longer, cf. {@link Query}. This collection is left
+   * untouched.
+   * 
+   * This method does not lock the collection. The query works on a snapshot
+   * of the collection taken when the method is called, so {@link Document}s
+   * added or removed while the query runs do not affect the result. The
+   * statistics of the collection used for weighting the query words are read
+   * when the query starts and may already include such changes.
+   * 
+   * The results of the most recent queries are cached, cf.
+   * {@link DocumentCollection#setQueryCacheSize(int)}. A cached result is
+   * returned, if the same words have been queried with the same
+   * <code>k</code> and {@link Scoring} since this collection has been modified
+   * the last time.
    * 
    * @param searchQuery the query String
+   * @param k           the maximum number of {@link Document}s in the result
+   * @param scoring     the way the similarity is calculated
+   * @return the <code>k</code> most similar {@link Document}s, the most similar
+   *         first
    */
-  public void match(String searchQuery) {
-    if (this.isEmpty()) {
-      return;
+  public QueryResult match(String searchQuery, int k, Scoring scoring) {
+    if (k <= 0 || searchQuery == null || searchQuery.equals("")) {
+      return new QueryResult(new int[0], new double[0], this.snapshot());
     }
 
-    if (searchQuery == null || searchQuery.equals("")) {
-      return;
+    /* the query is tokenized and stemmed just like every other document */
+    Query query = Document.parseQuery(searchQuery);
+
+    String key = QueryCache.key(query, k, scoring);
+    QueryResult cached = this.queryCache.get(key, this.version);
+    if (cached != null) {
+      return cached;
     }
 
-    /* add query to collection as document */
-    Document queryDocument = new Document("", "", "", null, null, searchQuery);
-    this.prependDocument(queryDocument);
+    /* pin the version before taking the snapshot, so that nothing the query may see is purged */
+    long pinnedVersion = this.version;
+    this.pinnedVersions.pin(pinnedVersion);
 
-    /* add every word to every document with count 0 */
-    this.addZeroWordsToDocuments();
+    try {
+      CollectionSnapshot snapshot = this.snapshot();
 
-    /* sort all WordCountsArrays of all documents */
-    DocumentCollectionCell tmp = this.first;
-    while (tmp != null) {
-      tmp.getDocument().getWordCounts().sort();
-      tmp = tmp.getNext();
-    }
-
-    /* calculate similarities with query document */
-    tmp = this.first.getNext();
-    while (tmp != null) {
-      tmp.setQuerySimilarity(tmp.getDocument().getWordCounts().computeSimilarity(queryDocument.getWordCounts()));
-      tmp = tmp.getNext();
-    }
+      TopDocuments top = this.scoreDocuments(query, scoring, k, snapshot);
+      top.sortDescending();
 
-    /* remove the query we added in the beginning */
-    this.removeFirstDocument();
+      int[] documentIds = new int[top.size()];
+      double[] similarities = new double[top.size()];
+      for (int i = 0; i < top.size(); i++) {
+        documentIds[i] = top.getDocumentId(i);
+        similarities[i] = top.getSimilarity(i);
+      }
 
-    this.sortBySimilarityDesc();
+      QueryResult result = new QueryResult(documentIds, similarities, snapshot);
+      this.queryCache.put(key, result, snapshot.getVersion());
+      return result;
+    } finally {
+      /* a compaction waiting for the oldest version runs in the background */
+      if (this.pinnedVersions.release(pinnedVersion) && this.compactionPending) {
+        this.scheduleCompaction();
+      }
+    }
   }
 
   /**
-   * This private helper method swaps the content of the two specified
-   * {@link DocumentCollectionCell}s of this {@link DocumentCollection}.
+   * Calculates the similarity between the specified query and every
+   * {@link Document} of the specified snapshot sharing at least one word with
+   * it and collects the <code>k</code> most similar {@link Document}s.
+   * 
+   * The returned {@link TopDocuments} only has room for as many
+   * {@link Document}s as there are entries in the postings lists of the query
+   * words, so an unbounded query sharing words with only a few
+   * {@link Document}s does not allocate space for every document id.
+   * 
+   * If this collection contains at least as many {@link Document}s as the
+   * parallel threshold, the range of document ids is split into chunks, which
+   * are scored concurrently into their own {@link TopDocuments}. The best
+   * {@link Document}s of all chunks are collected afterwards.
    * 
-   * @param cell1 the first {@link DocumentCollectionCell}
-   * @param cell2 the second {@link DocumentCollectionCell}
+   * @param query    the words and counts of the query
+   * @param scoring  the way the similarity is calculated
+   * @param k        the maximum number of documents to collect
+   * @param snapshot the snapshot of this collection to work on
+   * @return the most similar documents
    */
-  private void swap(DocumentCollectionCell cell1, DocumentCollectionCell cell2) {
-    /*
-     * swap both contained the contained document and the corresponding similarity
-     */
+  private TopDocuments scoreDocuments(Query query, Scoring scoring, int k, CollectionSnapshot snapshot) {
+    WordCountsArray wordCounts = query.getWordCounts();
+    Segment[] segments = snapshot.getSegments();
+
+    /* the statistics of the whole collection are the sums over its segments */
+    int numDocuments = 0;
+    long totalLength = 0;
+    int[] documentFrequencies = new int[wordCounts.size()];
+
+    for (int s = 0; s < segments.length; s++) {
+      InvertedIndex index = segments[s].getIndex();
+      numDocuments += index.getNumDocuments();
+      totalLength += index.getTotalLength();
+
+      for (int i = 0; i < wordCounts.size(); i++) {
+        documentFrequencies[i] += index.getDocumentFrequency(wordCounts.getTermId(i));
+      }
+    }
+
+    double averageLength = numDocuments == 0 ? 0 : (double) totalLength / numDocuments;
+
+    /* collect the postings lists of all query words contained in each segment */
+    Postings[][] lists = new Postings[segments.length][wordCounts.size()];
+    double[][] weights = new double[segments.length][wordCounts.size()];
+    int[] numLists = new int[segments.length];
+    int totalLists = 0;
+    long numEntries = 0;
+
+    for (int s = 0; s < segments.length; s++) {
+      for (int i = 0; i < wordCounts.size(); i++) {
+        int count = wordCounts.getCount(i);
+
+        Postings list = segments[s].getIndex().getPostings(wordCounts.getTermId(i));
+        if (list != null && count > 0) {
+          lists[s][numLists[s]] = list.snapshot();
+          weights[s][numLists[s]] = scoring.termWeight(count, documentFrequencies[i], numDocuments);
+          numLists[s]++;
+          totalLists++;
+          numEntries += lists[s][numLists[s] - 1].size();
+        }
+      }
+    }
+
+    if (totalLists == 0) {
+      return new TopDocuments(0);
+    }
 
-    Document tmpDoc = cell1.getDocument();
-    double tmpSim = cell1.getQuerySimilarity();
+    double queryNorm = query.getNorm();
 
-    cell1.setDocument(cell2.getDocument());
-    cell1.setQuerySimilarity(cell2.getQuerySimilarity());
+    int numIds = snapshot.getNumIds();
 
-    cell2.setDocument(tmpDoc);
-    cell2.setQuerySimilarity(tmpSim);
-  }
-  
-  private static DocumentCollectionCell[] merge(DocumentCollectionCell[] a, DocumentCollectionCell[] b) {
-    DocumentCollectionCell[] merged = new DocumentCollectionCell[a.length + b.length];
-    int aIndex = 0;
-    int bIndex = 0;
-    for (int i = 0; i < merged.length; i++) {
-      if (aIndex >= a.length)
-        merged[i] = b[bIndex++];
-      else if (bIndex >= b.length)
-        merged[i] = a[aIndex++];
-      else if (a[aIndex].getQuerySimilarity() > b[bIndex].getQuerySimilarity())
-        merged[i] = a[aIndex++];
-      else
-        merged[i] = b[bIndex++];
+    /* no more documents than entries of the lists can be found */
+    int maxSize = (int) Math.min(k, Math.min(numEntries, numIds));
+    TopDocuments top = new TopDocuments(maxSize);
+
+    /* removed documents still occupy ids, but cost nothing to score */
+    if (numDocuments < this.parallelThreshold) {
+      this.scoreSegments(lists, weights, numLists, scoring, queryNorm, averageLength, 0, numIds, snapshot, top);
+      return top;
     }
-    return merged;
-  }
-  
-  private static DocumentCollectionCell[] mergeSortIt(DocumentCollectionCell[] a) {
-    // Wir teilen zunächst das Array in a.length viele 1-elementige Arrays auf
-    DocumentCollectionCell[][] parts = new DocumentCollectionCell[a.length][];
-    for (int i = 0; i < a.length; i++)
-      parts[i] = new DocumentCollectionCell[] { a[i] };
-    // Wir mergen wiederholt je zwei benachbarte Arrays, bis nur mehr ein Teil-Array
-    // über bleibt.
-    while (parts.length > 1) {
-      DocumentCollectionCell[][] partsNew = new DocumentCollectionCell[(parts.length + 1) / 2][];
-      for (int i = 0; i < partsNew.length; i++) {
-        if (2 * i + 1 < parts.length)
-          partsNew[i] = merge(parts[2 * i], parts[2 * i + 1]);
-        else
-          // Ist die Länge nicht durch zwei teilbar, übernehmen wir den letzten Teil-Array
-          // einfach
-          partsNew[i] = parts[2 * i];
+
+    /* a few chunks per processor, so that uneven chunks even out */
+    int numChunks = 4 * Runtime.getRuntime().availableProcessors();
+    int chunkSize = (numIds + numChunks - 1) / numChunks;
+    TopDocuments[] chunkTops = new TopDocuments[numChunks];
+
+    IntStream.range(0, numChunks).parallel().forEach(c -> {
+      int fromId = c * chunkSize;
+      int toId = Math.min(fromId + chunkSize, numIds);
+      chunkTops[c] = new TopDocuments(Math.min(maxSize, Math.max(toId - fromId, 0)));
+      this.scoreSegments(lists, weights, numLists, scoring, queryNorm, averageLength, fromId, toId, snapshot,
+          chunkTops[c]);
+    });
+
+    /* merge the best documents of all chunks */
+    for (int c = 0; c < numChunks; c++) {
+      for (int i = 0; i < chunkTops[c].size(); i++) {
+        top.offer(chunkTops[c].getDocumentId(i), chunkTops[c].getSimilarity(i));
       }
-      parts = partsNew;
     }
-    return parts[0];
-  }
 
-  /**
-   * This method sorts the documents in this collection descending, according to
-   * their similarity. The similarity of each document is calculated by calling
-   * {@link DocumentCollection#match(String)} and then stored in the corresponding
-   * {@link DocumentCollectionCell}.
-   */
-  private void sortBySimilarityDesc() {
-    // Zellen in ein Array kopieren
-    DocumentCollectionCell[] cells = new DocumentCollectionCell[this.numDocuments()];
-    DocumentCollectionCell actCell = this.first;
-    for(int i = 0; actCell != null; i++) {
-      cells[i] = actCell;
-      actCell = actCell.getNext();
-    }
-    
-    // Sortieren
-    cells = mergeSortIt(cells);
-    
-    // Wieder in eine Liste umwandeln
-    DocumentCollectionCell previous = null, next = null;
-    for(int i = 0; i < cells.length; i++) {
-      if (i > 0)
-        previous = cells[i - 1];
-      if (i == cells.length - 1)
-        next = null;
-      else
-        next = cells[i + 1];
-      cells[i].setNext(next);
-      cells[i].setPrevious(previous);
-    }
-    this.first = cells[0];
+    return top;
   }
 
   /**
-   * This method gets a set of all words of all {@link Document}s in this
-   * collection and adds every word to every {@link Document} in this collection
-   * with count <code>0</code>.
+   * Calculates the similarity between a query and every {@link Document} of
+   * the specified snapshot with an id in the specified range sharing at least
+   * one word with the query and offers the similarity to the specified
+   * {@link TopDocuments}.
    * 
-   * After this method has been executed, all {@link Document}s in this administer
-   * the same words. Note, that the words are always added with count
-   * <code>0</code>.
+   * Every segment of the snapshot is scored using its own postings lists for
+   * the part of the range it covers.
    * 
+   * @param lists         the postings lists of the query words, per segment
+   * @param weights       the weights of the query words, per segment
+   * @param numLists      the number of postings lists, per segment
+   * @param scoring       the way the similarity is calculated
+   * @param queryNorm     the length of the word count vector of the query
+   * @param averageLength the average number of words of a document
+   * @param fromId        the lowest document id to score, inclusive
+   * @param toId          the highest document id to score, exclusive
+   * @param snapshot      the snapshot of this collection to work on
+   * @param top           collects the most similar documents
    */
-  private void addZeroWordsToDocuments() {
-    WordCountsArray allWords = this.allWords();
-
-    DocumentCollectionCell tmp = this.first;
-
-    while (tmp != null) {
-      for (int j = 0; j < allWords.size(); j++) {
-        String word = allWords.getWord(j);
-
-        tmp.getDocument().getWordCounts().add(word, 0);
+  private void scoreSegments(Postings[][] lists, double[][] weights, int[] numLists, Scoring scoring,
+      double queryNorm, double averageLength, int fromId, int toId, CollectionSnapshot snapshot, TopDocuments top) {
+    Segment[] segments = snapshot.getSegments();
+
+    for (int s = 0; s < segments.length; s++) {
+      int segmentFromId = Math.max(fromId, segments[s].getBaseId());
+      int segmentToId = toId;
+      if (s + 1 < segments.length) {
+        segmentToId = Math.min(toId, segments[s + 1].getBaseId());
       }
 
-      tmp = tmp.getNext();
+      if (numLists[s] > 0 && segmentFromId < segmentToId) {
+        this.scoreRange(lists[s], weights[s], numLists[s], scoring, queryNorm, averageLength, segmentFromId,
+            segmentToId, segments[s].getIndex(), snapshot, top);
+      }
     }
   }
 
   /**
-   * This method returns the similarity of the {@link Document} at the specified
-   * index. This similarity must have been calculated before using the method
-   * {@link DocumentCollection#match(String)}.
+   * Calculates the similarity between a query and every {@link Document} of
+   * the specified snapshot with an id in the specified range sharing at least
+   * one word with the query and offers the similarity to the specified
+   * {@link TopDocuments}.
    * 
-   * If the specified index is invalid, <code>-1</code> is returned.
+   * The postings lists of the query words are traversed simultaneously in
+   * ascending order of the document ids, so that the sum of the scores of the
+   * words shared by the query and each {@link Document} is complete as soon as
+   * its id has been passed.
    * 
-   * @param index the index
-   * @return the similarity of the {@link Document} at the specified index
+   * Once <code>top</code> is full, {@link Document}s that cannot beat the
+   * lowest collected similarity are skipped (MaxScore): the lists are ordered
+   * by the upper bound of their share in the similarity, cf.
+   * {@link Scoring#maxScore(double, int, double)}. The lists with the lowest
+   * bounds, which together cannot reach the lowest collected similarity, are
+   * not used for finding the next {@link Document} anymore, but only looked up
+   * for the {@link Document}s found in the other lists, as long as these may
+   * still get into <code>top</code>.
+   * 
+   * The lists are read through {@link PostingsIterator}s, which decode their
+   * compressed entries on the fly and skip blocks of entries not needed.
+   * 
+   * @param lists         the postings lists of the query words
+   * @param weights       the weights of the query words
+   * @param numLists      the number of postings lists
+   * @param scoring       the way the similarity is calculated
+   * @param queryNorm     the length of the word count vector of the query
+   * @param averageLength the average number of words of a document
+   * @param fromId        the lowest document id to score, inclusive
+   * @param toId          the highest document id to score, exclusive
+   * @param index         the index the postings lists belong to
+   * @param snapshot      the snapshot of this collection to work on
+   * @param top           collects the most similar documents
    */
-  public double getQuerySimilarity(int index) {
-    if (index < 0 || index >= this.numDocuments()) {
-      return -1;
+  private void scoreRange(Postings[] lists, double[] weights, int numLists, Scoring scoring, double queryNorm,
+      double averageLength, int fromId, int toId, InvertedIndex index, CollectionSnapshot snapshot,
+      TopDocuments top) {
+    /* order the lists by the upper bound of their share, lowest first */
+    Postings[] sortedLists = new Postings[numLists];
+    double[] sortedWeights = new double[numLists];
+    double[] maxScores = new double[numLists];
+
+    for (int i = 0; i < numLists; i++) {
+      double maxScore = scoring.maxScore(weights[i], lists[i].getMaxCount(), queryNorm);
+
+      int j = i;
+      while (j > 0 && maxScores[j - 1] > maxScore) {
+        sortedLists[j] = sortedLists[j - 1];
+        sortedWeights[j] = sortedWeights[j - 1];
+        maxScores[j] = maxScores[j - 1];
+        j--;
+      }
+
+      sortedLists[j] = lists[i];
+      sortedWeights[j] = weights[i];
+      maxScores[j] = maxScore;
+    }
+
+    /* the upper bound of the similarity of a document found only in the first i + 1 lists */
+    double[] cumulativeMaxScores = new double[numLists];
+    for (int i = 0; i < numLists; i++) {
+      cumulativeMaxScores[i] = (i > 0 ? cumulativeMaxScores[i - 1] : 0) + maxScores[i];
+    }
+
+    /* one iterator per postings list, starting at the first id in range */
+    PostingsIterator[] iterators = new PostingsIterator[numLists];
+    double[] termScores = new double[numLists];
+    for (int i = 0; i < numLists; i++) {
+      iterators[i] = sortedLists[i].iterator();
+      iterators[i].advance(fromId);
     }
 
-    return this.getDocumentCollectionCell(index).getQuerySimilarity();
+    /* the lists before this one cannot bring a document into top on their own */
+    int firstEssential = 0;
+    double threshold = Double.NEGATIVE_INFINITY;
+
+    while (true) {
+      if (top.isFull()) {
+        threshold = top.getMinSimilarity();
+
+        while (firstEssential < numLists && cumulativeMaxScores[firstEssential] < threshold) {
+          firstEssential++;
+        }
+      }
+
+      /* find the smallest document id not processed yet in the essential lists */
+      int documentId = toId;
+      for (int i = firstEssential; i < numLists; i++) {
+        documentId = Math.min(documentId, iterators[i].documentId());
+      }
+
+      if (documentId == toId) {
+        break;
+      }
+
+      /* sum up the scores of the shared words and move on */
+      int length = index.getLength(documentId);
+      double sum = 0;
+      for (int i = firstEssential; i < numLists; i++) {
+        termScores[i] = 0;
+
+        if (iterators[i].documentId() == documentId) {
+          termScores[i] = scoring.termScore(sortedWeights[i], iterators[i].count(), length, averageLength);
+          sum += termScores[i];
+          iterators[i].next();
+        }
+      }
+
+      double documentNorm = index.getNorm(documentId);
+      if (documentNorm == 0 || !snapshot.contains(documentId)) {
+        continue;
+      }
+
+      /* look the document up in the other lists, as long as it may still get into top */
+      double similarity = scoring.documentScore(sum, documentNorm, length, queryNorm);
+      boolean pruned = false;
+
+      for (int i = firstEssential - 1; i >= 0 && !pruned; i--) {
+        termScores[i] = 0;
+
+        if (similarity + cumulativeMaxScores[i] < threshold) {
+          pruned = true;
+        } else {
+          if (iterators[i].advance(documentId) && iterators[i].documentId() == documentId) {
+            termScores[i] = scoring.termScore(sortedWeights[i], iterators[i].count(), length, averageLength);
+            sum += termScores[i];
+            similarity = scoring.documentScore(sum, documentNorm, length, queryNorm);
+          }
+        }
+      }
+
+      if (!pruned) {
+        /* sum up in a fixed order, so that the similarity does not depend on the pruning */
+        sum = 0;
+        for (int i = 0; i < numLists; i++) {
+          sum += termScores[i];
+        }
+
+        top.offer(documentId, scoring.documentScore(sum, documentNorm, length, queryNorm));
+      }
+    }
   }
 
   /**
@@ -521,17 +2088,7 @@ public class DocumentCollection {
       return null;
     }
 
-    /* navigate to corresponding cell at the index */
-
-    DocumentCollectionCell tmp = this.first;
-
-    int i = 0;
-    while (i < index) {
-      tmp = tmp.getNext();
-      i++;
-    }
-
-    return tmp;
+    return this.cells[this.position(index)];
   }
 
   /**
@@ -540,7 +2097,7 @@ public class DocumentCollection {
    * 
    * @return a string representation of this {@link DocumentCollection}.
    */
-  public String toString() {
+  public synchronized String toString() {
     if (this.numDocuments() == 0) {
       return "[]";
     }
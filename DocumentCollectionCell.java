@@ -6,66 +6,121 @@
  */
 public class DocumentCollectionCell {
   /**
-   * the document in this cell
+   * the document in this cell or <code>null</code>, if it has not been read
+   * from its file yet
    */
-  private Document document;
+  private volatile Document document;
 
   /**
-   * pointer to the next cell
+   * the file the document in this cell is read from or <code>null</code>, if
+   * it has already been read
    */
-  private DocumentCollectionCell previous;
+  private IndexFile file;
 
   /**
-   * pointer to the next cell
+   * the position of the document in its file
    */
-  private DocumentCollectionCell next;
+  private int position;
+
+  /**
+   * the id of the document in this cell, unique within its collection
+   */
+  private final int id;
+
+  /**
+   * the version of the collection in which the document in this cell has been
+   * removed, or <code>Long.MAX_VALUE</code>, if it has not been removed
+   */
+  private volatile long removedIn;
+
+  /**
+   * the previous cell of a linked collection or <code>null</code>, if this is
+   * the first cell or the collection is not linked
+   */
+  private DocumentCollectionCell previous;
 
   /**
-   * the similarity of the document in this cell
+   * the next cell of a linked collection or <code>null</code>, if this is the
+   * last cell or the collection is not linked
    */
-  private double querySimilarity;
+  private DocumentCollectionCell next;
 
   /**
    * Constructs a new instance.
    * 
    * @param document the {@link Document} in the cell
-   * @param next     pointer to the next cell
+   * @param id       the id of the {@link Document} in the cell
    */
-  public DocumentCollectionCell(
-    Document document, 
-    DocumentCollectionCell previous,
-    DocumentCollectionCell next
-  ) {
+  public DocumentCollectionCell(Document document, int id) {
     this.document = document;
-    this.next = next;
-    this.previous = previous;
-    this.querySimilarity = 0;
+    this.id = id;
+    this.removedIn = Long.MAX_VALUE;
+  }
+
+  /**
+   * Constructs a new instance, whose {@link Document} is read from the
+   * specified {@link IndexFile} the first time it is needed.
+   * 
+   * @param file     the {@link IndexFile} containing the {@link Document}
+   * @param position the position of the {@link Document} in the file
+   * @param id       the id of the {@link Document} in the cell
+   */
+  public DocumentCollectionCell(IndexFile file, int position, int id) {
+    this.file = file;
+    this.position = position;
+    this.id = id;
+    this.removedIn = Long.MAX_VALUE;
   }
 
   /**
-   * Returns the previous {@link DocumentCollectionCell}
+   * Returns the version of the collection in which the {@link Document} in this
+   * cell has been removed.
    * 
-   * @return the previous {@link DocumentCollectionCell}
+   * @return the version in which the {@link Document} has been removed, or
+   *         <code>Long.MAX_VALUE</code>, if it has not been removed
+   */
+  public long getRemovedIn() {
+    return removedIn;
+  }
+
+  /**
+   * Sets the version of the collection in which the {@link Document} in this
+   * cell has been removed.
+   * 
+   * @param removedIn the version in which the {@link Document} has been removed
+   */
+  public void setRemovedIn(long removedIn) {
+    this.removedIn = removedIn;
+  }
+
+  /**
+   * Returns the previous {@link DocumentCollectionCell} of a linked
+   * collection, cf. {@link DocumentCollection#DocumentCollection(boolean, boolean)}.
+   * 
+   * @return the previous {@link DocumentCollectionCell} or <code>null</code>,
+   *         if this is the first cell or the collection is not linked
    */
   public DocumentCollectionCell getPrevious() {
     return previous;
   }
 
   /**
-   * Returns the next {@link DocumentCollectionCell}
+   * Returns the next {@link DocumentCollectionCell} of a linked collection,
+   * cf. {@link DocumentCollection#DocumentCollection(boolean, boolean)}.
    * 
-   * @return the next {@link DocumentCollectionCell}
+   * @return the next {@link DocumentCollectionCell} or <code>null</code>, if
+   *         this is the last cell or the collection is not linked
    */
   public DocumentCollectionCell getNext() {
     return next;
   }
 
   /**
-   * Set the next {@link DocumentCollectionCell} to the specified value
+   * Set the previous {@link DocumentCollectionCell} to the specified value
    * 
-   * @param next the next {@link DocumentCollectionCell}
+   * @param previous the previous {@link DocumentCollectionCell}
    */
-  public void setPrevious(DocumentCollectionCell previous) {
+  void setPrevious(DocumentCollectionCell previous) {
     this.previous = previous;
   }
 
@@ -74,35 +129,70 @@ public class DocumentCollectionCell {
    * 
    * @param next the next {@link DocumentCollectionCell}
    */
-  public void setNext(DocumentCollectionCell next) {
+  void setNext(DocumentCollectionCell next) {
     this.next = next;
   }
 
   /**
-   * Returns the similarity of the {@link Document} in this cell
+   * Returns the id of the {@link Document} in this cell.
    * 
-   * @return the similarity of the {@link Document} in this cell
+   * @return the id of the {@link Document} in this cell
    */
-  public double getQuerySimilarity() {
-    return querySimilarity;
+  public int getId() {
+    return id;
   }
 
   /**
-   * Sets the similarity of the {@link Document} in this cell
+   * Returns the {@link Document} in this cell. If it has not been read from
+   * its file yet, it is read now and kept.
    * 
-   * @param querySimilarity the similarity of the {@link Document}
+   * @return the {@link Document} in this cell.
    */
-  public void setQuerySimilarity(double querySimilarity) {
-    this.querySimilarity = querySimilarity;
+  public Document getDocument() {
+    Document document = this.document;
+
+    if (document == null) {
+      synchronized (this) {
+        if (this.document == null) {
+          this.document = this.file.readDocument(this.position);
+          this.file = null;
+        }
+
+        document = this.document;
+      }
+    }
+
+    return document;
   }
 
   /**
-   * Returns the {@link Document} in this cell.
+   * Returns the {@link Document} in this cell like
+   * {@link DocumentCollectionCell#getDocument()}, but does not keep it, if it
+   * has to be read from its file, e.g. to write it to another file.
    * 
-   * @return the {@link Document} in this cell.
+   * @return the {@link Document} in this cell
    */
-  public Document getDocument() {
-    return document;
+  public synchronized Document peekDocument() {
+    if (this.document == null) {
+      return this.file.readDocument(this.position);
+    }
+
+    return this.document;
+  }
+
+  /**
+   * Lets the {@link Document} in this cell be read from the specified file
+   * from now on, unless it has already been read, e.g. after its old file has
+   * been replaced.
+   * 
+   * @param file     the new {@link IndexFile} containing the {@link Document}
+   * @param position the position of the {@link Document} in the new file
+   */
+  public synchronized void moveTo(IndexFile file, int position) {
+    if (this.document == null) {
+      this.file = file;
+      this.position = position;
+    }
   }
 
   /**
@@ -112,9 +202,10 @@ public class DocumentCollectionCell {
    * @param document the new {@link Document} in this cell
    * @return the {@link Document} that used to be in this cell
    */
-  public Document setDocument(Document document) {
-    Document oldDocument = this.document;
+  public synchronized Document setDocument(Document document) {
+    Document oldDocument = this.getDocument();
     this.document = document;
+    this.file = null;
     return oldDocument;
   }
 }
\ No newline at end of file
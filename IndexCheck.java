@@ -0,0 +1,1950 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * This class checks the index behind
+ * {@link DocumentCollection#match(String, int, Scoring)} on generated
+ * collections and queries.
+ *
+ * Every check compares two ways of computing the same result, e.g. a pruned
+ * and a full ranking, and uses a fixed seed, so that a failure can be
+ * reproduced. The checks are run by {@link IndexCheck#main(String[])}, which
+ * exits with a non-zero status if any of them fails, or by the command
+ * <code>check</code> of {@link TestIt}.
+ *
+ */
+public final class IndexCheck {
+  /**
+   * the seed of all random choices
+   */
+  private static final long SEED = 7;
+
+  /**
+   * the number of different words of the generated documents
+   */
+  private static final int NUM_WORDS = 300;
+
+  /**
+   * the largest difference of two similarities considered equal
+   */
+  private static final double EPSILON = 1e-12;
+
+  /**
+   * Instances of this class are not needed.
+   */
+  private IndexCheck() {
+  }
+
+  /**
+   * Runs all checks and exits with status <code>1</code>, if any of them
+   * fails.
+   *
+   * @param args not used
+   */
+  public static void main(String[] args) {
+    if (!checkAll(System.out)) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Runs all checks and prints the result of every check.
+   *
+   * @param out the stream to print the results to
+   * @return <code>true</code>, if all checks have passed
+   */
+  public static boolean checkAll(PrintStream out) {
+    boolean passed = true;
+    passed &= report(out, "incremental index", checkIncrementalIndex());
+    passed &= report(out, "bounded top k", checkTopK());
+    passed &= report(out, "pruned top k", checkPruning());
+    passed &= report(out, "postings decoding", checkPostings());
+    passed &= report(out, "parallel scoring", checkParallelScoring());
+    passed &= report(out, "bulk ingestion", checkIngestion());
+    passed &= report(out, "arena waste", checkArenaWaste());
+    passed &= report(out, "off-heap index", checkOffHeap());
+    passed &= report(out, "save and open", checkPersistence());
+    passed &= report(out, "saving opened files", checkResave());
+    passed &= report(out, "periodic flush", checkPeriodicFlush());
+    passed &= report(out, "circular array", checkCircularArray());
+    passed &= report(out, "linked cells", checkLinkedCells());
+    passed &= report(out, "held results", checkHeldResults());
+    passed &= report(out, "concurrent queries", checkConcurrency());
+    passed &= report(out, "concurrent interning", checkInterning());
+    passed &= report(out, "scoring formulas", checkScoring());
+    passed &= report(out, "upper bounds of scores", checkMaxScores());
+    passed &= report(out, "query cache invalidation", checkCacheInvalidation());
+    passed &= report(out, "query cache eviction", checkCacheEviction());
+    passed &= report(out, "word lookup", checkWordLookup());
+    passed &= report(out, "sparse similarity", checkSparseSimilarity());
+    passed &= report(out, "cached norms", checkNorms());
+    passed &= report(out, "tokenizing", checkTokenizing());
+    passed &= report(out, "suffix trie", checkSuffixTrie());
+    passed &= report(out, "stem cache", checkStemCache());
+    passed &= report(out, "sorting words", checkSort());
+    passed &= report(out, "sorted flag", checkSortedFlag());
+    passed &= report(out, "reading files", checkFileReading());
+    return passed;
+  }
+
+  /**
+   * Prints the result of a check.
+   *
+   * @param out     the stream to print the result to
+   * @param name    the name of the check
+   * @param failure the description of the failure or <code>null</code>, if the
+   *                check has passed
+   * @return <code>true</code>, if the check has passed
+   */
+  private static boolean report(PrintStream out, String name, String failure) {
+    if (failure == null) {
+      out.println(name + ": ok");
+      return true;
+    }
+
+    out.println(name + ": FAILED, " + failure);
+    return false;
+  }
+
+  /**
+   * Checks, that the index answers queries just like comparing the query with
+   * every {@link Document} of the collection, while {@link Document}s are
+   * prepended, appended and removed, and that {@link Document}s sharing no
+   * word with the query are left out.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkIncrementalIndex() {
+    Random random = new Random(SEED);
+    DocumentCollection dc = new DocumentCollection();
+    dc.setQueryCacheSize(0);
+
+    for (int i = 0; i < 3000; i++) {
+      int operation = random.nextInt(4);
+      Document doc = new Document("d" + i, "", "", null, null, generateText(random, 20, 3));
+
+      if (operation == 0) {
+        dc.prependDocument(doc);
+      } else if (operation == 1 || dc.isEmpty()) {
+        dc.appendDocument(doc);
+      } else if (operation == 2) {
+        dc.remove(random.nextInt(dc.numDocuments()));
+      } else {
+        dc.appendDocument(doc);
+        dc.remove(random.nextInt(dc.numDocuments()));
+      }
+
+      if (i % 100 != 0) {
+        continue;
+      }
+
+      for (int j = 0; j < 5; j++) {
+        String query = generateText(random, 4, 1);
+        Query parsed = Document.parseQuery(query);
+        WordCountsArray queryWords = parsed.getWordCounts();
+
+        /* the cosine of every document sharing a word with the query */
+        Map<String, Double> expected = new HashMap<>();
+        for (int index = 0; index < dc.numDocuments(); index++) {
+          WordCountsArray words = dc.get(index).getWordCounts();
+          long scalarProduct = 0;
+
+          for (int w = 0; w < queryWords.size(); w++) {
+            scalarProduct += (long) queryWords.getCount(w) * Math.max(words.getCount(queryWords.getWord(w)), 0);
+          }
+
+          if (scalarProduct > 0) {
+            expected.put(dc.get(index).getTitle(), scalarProduct / (parsed.getNorm() * words.getNorm()));
+          }
+        }
+
+        QueryResult result = dc.match(query);
+        if (result.size() != expected.size()) {
+          return "step " + i + ", query \"" + query + "\": " + result.size() + " documents found, expected "
+              + expected.size();
+        }
+
+        for (int rank = 0; rank < result.size(); rank++) {
+          Double similarity = expected.get(result.getDocument(rank).getTitle());
+
+          if (similarity == null || Math.abs(similarity - result.getSimilarity(rank)) > EPSILON
+              || rank > 0 && result.getSimilarity(rank) > result.getSimilarity(rank - 1)) {
+            return "step " + i + ", query \"" + query + "\": " + result.getDocument(rank).getTitle() + " at rank "
+                + (rank + 1) + " with " + result.getSimilarity(rank) + ", expected " + similarity;
+          }
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that {@link DocumentCollection#match(String, int)} returns exactly
+   * the first k {@link Document}s of the full ranking for any k, including
+   * k larger than the number of matching {@link Document}s, and nothing for k
+   * lower than <code>1</code>.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkTopK() {
+    Random random = new Random(SEED);
+    DocumentCollection dc = new DocumentCollection();
+    dc.setQueryCacheSize(0);
+    addDocuments(dc, random, 500);
+
+    for (int i = 0; i < 50; i++) {
+      String query = generateText(random, 3, 2);
+      QueryResult full = dc.match(query);
+
+      for (int k : new int[] { -1, 0, 1, 2, full.size() - 1, full.size(), full.size() + 10, Integer.MAX_VALUE }) {
+        String failure = compare(dc.match(query, k), full, Math.max(Math.min(k, full.size()), 0));
+
+        if (failure != null) {
+          return "query \"" + query + "\", k " + k + ": " + failure;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that the top k {@link Document}s of a query, which are found
+   * without scoring every candidate, are the first k {@link Document}s of the
+   * full ranking, for every {@link Scoring} and with and without scoring in
+   * parallel.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkPruning() {
+    Random random = new Random(SEED);
+
+    for (int parallelThreshold : new int[] { DocumentCollection.DEFAULT_PARALLEL_THRESHOLD, 0 }) {
+      DocumentCollection dc = new DocumentCollection();
+      dc.setParallelThreshold(parallelThreshold);
+      dc.setQueryCacheSize(0);
+      addDocuments(dc, random, 2000);
+
+      for (Scoring scoring : Scoring.values()) {
+        for (int i = 0; i < 100; i++) {
+          String query = generateText(random, 6, 2);
+          int k = 1 + random.nextInt(10);
+          QueryResult full = dc.match(query, Integer.MAX_VALUE, scoring);
+          String failure = compare(dc.match(query, k, scoring), full, Math.min(k, full.size()));
+
+          if (failure != null) {
+            return scoring + ", query \"" + query + "\", k " + k + ": " + failure;
+          }
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that the entries of a {@link Postings} list are decoded as they
+   * have been added, both one by one and when skipping blocks, for gaps and
+   * counts of any number of bytes.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkPostings() {
+    Random random = new Random(SEED);
+
+    for (int i = 0; i < 50; i++) {
+      int size = random.nextInt(20 * Postings.BLOCK_SIZE);
+      int[] documentIds = new int[size];
+      int[] counts = new int[size];
+      Postings list = new Postings(new PostingsArena(i % 2 == 0));
+
+      int documentId = -1;
+      for (int j = 0; j < size; j++) {
+        /* gaps and counts of one up to five bytes */
+        int maxGap = 1 << (7 * random.nextInt(5) + 1);
+        documentId += 1 + random.nextInt(Math.min(maxGap, (Integer.MAX_VALUE - 1 - documentId) / (size - j)));
+        documentIds[j] = documentId;
+        counts[j] = random.nextInt(8) == 0 ? random.nextInt(Integer.MAX_VALUE) : 1 + random.nextInt(5);
+        list.add(documentIds[j], counts[j]);
+      }
+
+      PostingsIterator iterator = list.iterator();
+      for (int j = 0; j < size; j++) {
+        if (!iterator.next() || iterator.documentId() != documentIds[j] || iterator.count() != counts[j]) {
+          return "list " + i + ", entry " + j + " decoded as (" + iterator.documentId() + ", " + iterator.count()
+              + "), expected (" + documentIds[j] + ", " + counts[j] + ")";
+        }
+      }
+
+      if (iterator.next()) {
+        return "list " + i + " has more than " + size + " entries";
+      }
+
+      /* advance to ascending targets, some of them between two entries */
+      iterator = list.iterator();
+      int position = 0;
+      int target = 0;
+      while (position < size) {
+        target += random.nextInt(2 * (documentIds[size - 1] / size + 1));
+        while (position < size && documentIds[position] < target) {
+          position++;
+        }
+
+        boolean found = iterator.advance(target);
+        if (found != (position < size)
+            || (found && (iterator.documentId() != documentIds[position] || iterator.count() != counts[position]))) {
+          return "list " + i + ", advancing to " + target + " found " + iterator.documentId() + ", expected "
+              + (position < size ? documentIds[position] : PostingsIterator.NO_MORE_DOCUMENTS);
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that scoring a query in parallel chunks finds the same
+   * {@link Document}s with the same similarities in the same order as scoring
+   * it on the calling thread, for every {@link Scoring} and for the full
+   * ranking as well as for the top k.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkParallelScoring() {
+    Random random = new Random(SEED);
+    DocumentCollection dc = new DocumentCollection();
+    dc.setQueryCacheSize(0);
+    addDocuments(dc, random, 5000);
+
+    for (Scoring scoring : Scoring.values()) {
+      for (int i = 0; i < 50; i++) {
+        String query = generateText(random, 6, 2);
+        int k = random.nextBoolean() ? Integer.MAX_VALUE : 1 + random.nextInt(20);
+
+        dc.setParallelThreshold(Integer.MAX_VALUE);
+        QueryResult sequential = dc.match(query, k, scoring);
+        dc.setParallelThreshold(0);
+        String failure = compare(dc.match(query, k, scoring), sequential, sequential.size());
+
+        if (failure != null) {
+          return scoring + ", query \"" + query + "\", k " + k + ": " + failure;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that {@link Document}s added in parallel batches by
+   * {@link DocumentCollection#addAll(String[], String[])} are answered just
+   * like the same {@link Document}s added one by one.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkIngestion() {
+    Random random = new Random(SEED);
+    DocumentCollection dc = new DocumentCollection();
+    DocumentCollection bulk = new DocumentCollection();
+
+    for (int batch = 0; batch < 10; batch++) {
+      String[] titles = new String[1 + random.nextInt(500)];
+      String[] contents = new String[titles.length];
+
+      for (int i = 0; i < titles.length; i++) {
+        titles[i] = "d" + batch + "-" + i;
+        contents[i] = generateText(random, 40, 3);
+        dc.appendDocument(new Document(titles[i], "", "", null, null, contents[i]));
+      }
+
+      bulk.addAll(titles, contents);
+    }
+
+    return compareQueries(bulk, dc, random);
+  }
+
+  /**
+   * Checks, that the regions given up by growing {@link Postings} lists are
+   * released by compacting the index, even if no {@link Document} is ever
+   * removed, and that the compacted lists keep all entries, both on and off
+   * the heap.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkArenaWaste() {
+    Random random = new Random(SEED);
+
+    for (boolean offHeap : new boolean[] { false, true }) {
+      DocumentCollection dc = new DocumentCollection(offHeap);
+      int numCompactions = 0;
+      long numAllocatedBytes = 0;
+
+      for (int i = 0; i < 60000; i++) {
+        dc.appendDocument(new Document("d" + i, "", "", null, null, generateText(random, 40, 3)));
+
+        InvertedIndex index = dc.getSegments()[0].getIndex();
+        if (index.getNumAllocatedBytes() < numAllocatedBytes) {
+          numCompactions++;
+        }
+        numAllocatedBytes = index.getNumAllocatedBytes();
+
+        long numAbandonedBytes = index.getNumAbandonedBytes();
+        if (numAbandonedBytes >= 1 << 20 && 3 * numAbandonedBytes > numAllocatedBytes) {
+          return "off-heap " + offHeap + ", " + numAbandonedBytes + " of " + numAllocatedBytes
+              + " bytes abandoned after " + (i + 1) + " documents";
+        }
+      }
+
+      if (numCompactions == 0) {
+        return "off-heap " + offHeap + ", never compacted";
+      }
+
+      /* the entries expected for every word, in the order of the ids */
+      List<List<int[]>> expected = new ArrayList<>();
+      for (int i = 0; i < dc.numDocuments(); i++) {
+        WordCountsArray wca = dc.get(i).getWordCounts();
+
+        for (int j = 0; j < wca.size(); j++) {
+          while (expected.size() <= wca.getTermId(j)) {
+            expected.add(new ArrayList<>());
+          }
+          expected.get(wca.getTermId(j)).add(new int[] { i, wca.getCount(j) });
+        }
+      }
+
+      InvertedIndex index = dc.getSegments()[0].getIndex();
+      for (int termId = 0; termId < expected.size(); termId++) {
+        List<int[]> entries = expected.get(termId);
+        if (entries.isEmpty()) {
+          continue;
+        }
+
+        Postings list = index.getPostings(termId);
+        PostingsIterator iterator = list == null ? null : list.iterator();
+        for (int[] entry : entries) {
+          if (iterator == null || !iterator.next() || iterator.documentId() != entry[0]
+              || iterator.count() != entry[1]) {
+            return "off-heap " + offHeap + ", postings of \"" + TermDictionary.getInstance().getTerm(termId)
+                + "\" lack (" + entry[0] + ", " + entry[1] + ")";
+          }
+        }
+
+        if (iterator.next()) {
+          return "off-heap " + offHeap + ", postings of \"" + TermDictionary.getInstance().getTerm(termId)
+              + "\" have more than " + entries.size() + " entries";
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that a collection with its index stored off-heap answers queries
+   * just like one with its index on the heap, while the same {@link Document}s
+   * are prepended, appended and removed, so that both indexes are compacted.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkOffHeap() {
+    Random random = new Random(SEED);
+    DocumentCollection heap = new DocumentCollection(false);
+    DocumentCollection offHeap = new DocumentCollection(true);
+
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 2000; i++) {
+        Document doc = new Document("d" + round + "-" + i, "", "", null, null, generateText(random, 30, 3));
+
+        if (random.nextBoolean()) {
+          heap.prependDocument(doc);
+          offHeap.prependDocument(doc);
+        } else {
+          heap.appendDocument(doc);
+          offHeap.appendDocument(doc);
+        }
+
+        /* about as many removals as additions in every other round */
+        if (random.nextInt(round % 2 == 0 ? 10 : 1) == 0 && !heap.isEmpty()) {
+          int index = random.nextInt(heap.numDocuments());
+          heap.remove(index);
+          offHeap.remove(index);
+        }
+      }
+
+      String failure = compareQueries(offHeap, heap, random);
+      if (failure != null) {
+        return "round " + round + ": " + failure;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that a collection read from an index file and a collection stored
+   * in a directory answer queries with the same {@link Document}s and
+   * similarities as the collection kept in memory, also after
+   * {@link Document}s have been removed from stored segments.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkPersistence() {
+    Path directory = null;
+
+    try {
+      directory = Files.createTempDirectory("indexcheck");
+      String fileName = directory.resolve("collection.idx").toString();
+      String segments = directory.resolve("segments").toString();
+
+      DocumentCollection dc = new DocumentCollection();
+      addDocuments(dc, new Random(SEED), 2000);
+      dc.save(fileName);
+
+      String failure = compareQueries(DocumentCollection.open(fileName), dc, new Random(SEED));
+      if (failure != null) {
+        return "index file: " + failure;
+      }
+
+      /* documents added to an opened collection are indexed on or off the heap as requested */
+      for (boolean offHeap : new boolean[] { false, true }) {
+        DocumentCollection opened = DocumentCollection.open(fileName, offHeap);
+        DocumentCollection copy = DocumentCollection.open(fileName);
+        if (opened.isOffHeap() != offHeap) {
+          return "index file opened with offHeap " + offHeap + " reports " + opened.isOffHeap();
+        }
+
+        addDocuments(opened, new Random(SEED + 1), 200);
+        addDocuments(copy, new Random(SEED + 1), 200);
+        failure = compareQueries(opened, copy, new Random(SEED));
+        if (failure != null) {
+          return "index file opened with offHeap " + offHeap + ": " + failure;
+        }
+      }
+
+      /* the same documents, added and removed in the same order */
+      DocumentCollection stored = DocumentCollection.openDirectory(segments);
+      stored.setSegmentSize(200);
+      addDocuments(stored, new Random(SEED), 2000);
+      stored.close();
+
+      stored = DocumentCollection.openDirectory(segments);
+      failure = compareQueries(stored, dc, new Random(SEED));
+      if (failure != null) {
+        return "directory: " + failure;
+      }
+
+      Random random = new Random(SEED);
+      for (int i = 0; i < 1000; i++) {
+        int index = random.nextInt(dc.numDocuments());
+        dc.remove(index);
+        stored.remove(index);
+      }
+      stored.close();
+
+      stored = DocumentCollection.openDirectory(segments);
+      failure = compareQueries(stored, dc, new Random(SEED));
+      stored.close();
+      if (failure != null) {
+        return "directory after removing: " + failure;
+      }
+
+      return null;
+    } catch (IOException e) {
+      return e.toString();
+    } finally {
+      delete(directory);
+    }
+  }
+
+  /**
+   * Checks, that a collection keeps its order and answers through repeated
+   * rounds of saving, opening and modifying it, with {@link Document}s
+   * prepended, appended and removed from the file as well as from memory,
+   * including saving an opened collection to the file it has been opened
+   * from.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkResave() {
+    Path directory = null;
+
+    try {
+      directory = Files.createTempDirectory("indexcheck");
+      String fileName = directory.resolve("collection.idx").toString();
+      Random random = new Random(SEED);
+
+      DocumentCollection expected = new DocumentCollection();
+      DocumentCollection dc = new DocumentCollection();
+
+      for (int round = 0; round < 4; round++) {
+        for (int i = 0; i < 500; i++) {
+          String content = generateText(random, 20, 3);
+          int operation = random.nextInt(4);
+
+          if (operation == 0) {
+            expected.prependDocument(new Document("d" + round + "-" + i, "", "", null, null, content));
+            dc.prependDocument(new Document("d" + round + "-" + i, "", "", null, null, content));
+          } else if (operation == 1 || expected.isEmpty()) {
+            expected.appendDocument(new Document("d" + round + "-" + i, "", "", null, null, content));
+            dc.appendDocument(new Document("d" + round + "-" + i, "", "", null, null, content));
+          } else {
+            int index = random.nextInt(expected.numDocuments());
+            expected.remove(index);
+            dc.remove(index);
+          }
+        }
+
+        /* the file of the last round is replaced while it is mapped */
+        dc.save(fileName);
+        dc = DocumentCollection.open(fileName, round % 2 == 1);
+
+        String failure = compareQueries(dc, expected, random);
+        if (failure != null) {
+          return "round " + round + ": " + failure;
+        }
+      }
+
+      return null;
+    } catch (IOException e) {
+      return e.toString();
+    } finally {
+      delete(directory);
+    }
+  }
+
+  /**
+   * Checks, that the {@link Document}s added to a collection stored in a
+   * directory are persisted after the flush interval, although they do not
+   * fill a segment and the collection is neither flushed nor closed.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkPeriodicFlush() {
+    Path directory = null;
+
+    try {
+      directory = Files.createTempDirectory("indexcheck");
+      String segments = directory.resolve("segments").toString();
+
+      DocumentCollection stored = DocumentCollection.openDirectory(segments);
+      stored.setFlushInterval(20);
+      addDocuments(stored, new Random(SEED), 100);
+
+      /* read copies of the files, since opening the directory itself deletes unlisted segments */
+      Path copy = directory.resolve("copy");
+      int numPersisted = 0;
+      for (int i = 0; i < 250 && numPersisted < stored.numDocuments(); i++) {
+        Thread.sleep(20);
+        delete(copy);
+        Files.createDirectories(copy);
+
+        /* the manifest first, then the segments it may list, which are never deleted here */
+        Path manifest = directory.resolve("segments").resolve("segments");
+        if (Files.exists(manifest)) {
+          Files.copy(manifest, copy.resolve("segments"));
+        }
+        try (Stream<Path> files = Files.list(directory.resolve("segments"))) {
+          for (Path file : (Iterable<Path>) files::iterator) {
+            if (file.getFileName().toString().endsWith(".idx")) {
+              Files.copy(file, copy.resolve(file.getFileName()));
+            }
+          }
+        }
+
+        numPersisted = new SegmentDirectory(copy.toString()).getOrder().length;
+      }
+      stored.close();
+      if (numPersisted != stored.numDocuments()) {
+        return numPersisted + " of " + stored.numDocuments() + " documents persisted";
+      }
+
+      return null;
+    } catch (IOException e) {
+      return e.toString();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return e.toString();
+    } finally {
+      delete(directory);
+    }
+  }
+
+  /**
+   * Checks, that a {@link Document} read from a file in chunks, cf.
+   * {@link Document#createDocumentFromFile(String)}, has the same words and
+   * counts as a {@link Document} created from the same text at once, for words
+   * crossing the end of a chunk, a word longer than a chunk and bytes that are
+   * not valid UTF-8.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkFileReading() {
+    Random random = new Random(SEED);
+    Path directory = null;
+
+    try {
+      directory = Files.createTempDirectory("indexcheck");
+      Path file = directory.resolve("content.txt");
+
+      /* a word ending shortly before, at and shortly after the end of the first chunk */
+      for (int offset = -3; offset <= 3; offset++) {
+        String text = " ".repeat(Document.READ_BUFFER_SIZE + offset - 3) + "wörter " + generateText(random, 10, 1);
+        String failure = compareFileContent(file, text.getBytes(StandardCharsets.UTF_8));
+        if (failure != null) {
+          return "word at the end of a chunk, offset " + offset + ": " + failure;
+        }
+      }
+
+      /* a letter of two chars is part of the word */
+      WordCountsArray words = new Document("", "", "", null, null, "wo\uD801\uDC00rt").getWordCounts();
+      if (words.size() != 1) {
+        return "a letter outside the Basic Multilingual Plane splits a word into " + words.size();
+      }
+
+      /* a letter of two chars split at the end of the first chunk, within and after a word */
+      for (String before : new String[] { "", "wort" }) {
+        String text = " ".repeat(Document.READ_BUFFER_SIZE - 1 - before.length()) + before + "\uD801\uDC00wort "
+            + generateText(random, 10, 1);
+        String failure = compareFileContent(file, text.getBytes(StandardCharsets.UTF_8));
+        if (failure != null) {
+          return "surrogate pair at the end of a chunk after \"" + before + "\": " + failure;
+        }
+      }
+
+      /* many chunks of words */
+      StringBuilder text = new StringBuilder();
+      while (text.length() < 10 * Document.READ_BUFFER_SIZE) {
+        text.append(generateText(random, 40, 3)).append("Äpfel, Straße; 4711\n");
+      }
+      String failure = compareFileContent(file, text.toString().getBytes(StandardCharsets.UTF_8));
+      if (failure != null) {
+        return "many chunks: " + failure;
+      }
+
+      /* a single word filling more than two chunks */
+      String longWord = "x".repeat(2 * Document.READ_BUFFER_SIZE + 100);
+      failure = compareFileContent(file, ("vorher " + longWord + " nachher").getBytes(StandardCharsets.UTF_8));
+      if (failure != null) {
+        return "long word: " + failure;
+      }
+
+      /* invalid bytes, e.g. ISO-8859-1, and multibyte characters split at any position */
+      byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+      for (int i = 0; i < 500; i++) {
+        int position = random.nextInt(bytes.length);
+        bytes[position] = (byte) (random.nextBoolean() ? 0xE4 : 0x80 + random.nextInt(0x80));
+      }
+      failure = compareFileContent(file, bytes);
+      if (failure != null) {
+        return "invalid UTF-8: " + failure;
+      }
+
+      return null;
+    } catch (IOException e) {
+      return e.toString();
+    } finally {
+      delete(directory);
+    }
+  }
+
+  /**
+   * Writes the specified bytes to the specified file and compares the words
+   * and counts of a {@link Document} read from the file with those of a
+   * {@link Document} created from the bytes decoded at once.
+   *
+   * @param file  the file
+   * @param bytes the content of the file
+   * @return the description of the difference or <code>null</code>, if the
+   *         words and counts are equal
+   * @throws IOException if the file cannot be written
+   */
+  private static String compareFileContent(Path file, byte[] bytes) throws IOException {
+    Files.write(file, bytes);
+
+    Document read = Document.createDocumentFromFile(file.toString());
+    if (read == null) {
+      return "the file could not be read";
+    }
+
+    Document expected = new Document("", "", "", null, null, new String(bytes, StandardCharsets.UTF_8));
+    if (!read.getWordCounts().equals(expected.getWordCounts())) {
+      return "read " + read.getWordCounts().size() + " words, expected " + expected.getWordCounts().size();
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that queries running while {@link Document}s are added and
+   * removed return ordered results of {@link Document}s that can be looked up,
+   * and that the collection afterwards answers queries just like a collection
+   * built from its remaining {@link Document}s.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkConcurrency() {
+    DocumentCollection dc = new DocumentCollection();
+    AtomicReference<String> failure = new AtomicReference<String>();
+
+    Thread[] queries = new Thread[4];
+    for (int i = 0; i < queries.length; i++) {
+      Random random = new Random(SEED + i);
+
+      queries[i] = new Thread(() -> {
+        try {
+          for (int j = 0; j < 2000 && failure.get() == null; j++) {
+            QueryResult result = dc.match(generateText(random, 3, 2), 10);
+
+            for (int rank = 0; rank < result.size(); rank++) {
+              if (result.getDocument(rank) == null) {
+                failure.compareAndSet(null, "no document at rank " + (rank + 1));
+              } else if (rank > 0 && result.getSimilarity(rank) > result.getSimilarity(rank - 1)) {
+                failure.compareAndSet(null, "rank " + (rank + 1) + " is more similar than rank " + rank);
+              }
+            }
+          }
+        } catch (RuntimeException e) {
+          failure.compareAndSet(null, e.toString());
+        }
+      });
+      queries[i].start();
+    }
+
+    /* remove about as many documents as are added, so compactions happen */
+    Random random = new Random(SEED);
+    for (int i = 0; i < 20000 && failure.get() == null; i++) {
+      dc.appendDocument(new Document("d" + i, "", "", null, null, generateText(random, 20, 3)));
+
+      if (dc.numDocuments() > 500) {
+        dc.remove(random.nextInt(dc.numDocuments()));
+      }
+    }
+
+    for (Thread query : queries) {
+      try {
+        query.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return "interrupted";
+      }
+    }
+
+    if (failure.get() != null) {
+      return failure.get();
+    }
+
+    DocumentCollection rebuilt = new DocumentCollection();
+    for (int i = 0; i < dc.numDocuments(); i++) {
+      rebuilt.appendDocument(dc.get(i));
+    }
+
+    return compareQueries(dc, rebuilt, new Random(SEED));
+  }
+
+  /**
+   * Checks, that the circular array of a collection keeps the order of a list
+   * while {@link Document}s are prepended, appended and removed at both ends
+   * and in between, so that the first element wraps around the end of the
+   * array and the array grows and is emptied again.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkCircularArray() {
+    Random random = new Random(SEED);
+    DocumentCollection dc = new DocumentCollection();
+    List<Document> expected = new ArrayList<>();
+
+    for (int i = 0; i < 5000; i++) {
+      /* grow, shrink until empty and grow again */
+      int operation = random.nextInt((i / 1000) % 2 == 0 ? 4 : 7);
+      Document doc = new Document("d" + i, "", "", null, null, generateText(random, 3, 2));
+
+      if (operation == 0) {
+        dc.prependDocument(doc);
+        expected.add(0, doc);
+      } else if (operation == 1) {
+        dc.appendDocument(doc);
+        expected.add(doc);
+      } else if (operation == 2 || operation == 4) {
+        dc.removeFirstDocument();
+        if (!expected.isEmpty()) {
+          expected.remove(0);
+        }
+      } else if (operation == 3 || operation == 5) {
+        dc.removeLastDocument();
+        if (!expected.isEmpty()) {
+          expected.remove(expected.size() - 1);
+        }
+      } else {
+        int index = random.nextInt(expected.size() + 2) - 1;
+        if (dc.remove(index) != (index >= 0 && index < expected.size())) {
+          return "step " + i + ": removing index " + index + " of " + expected.size() + " answered wrongly";
+        }
+        if (index >= 0 && index < expected.size()) {
+          expected.remove(index);
+        }
+      }
+
+      Document first = expected.isEmpty() ? null : expected.get(0);
+      Document last = expected.isEmpty() ? null : expected.get(expected.size() - 1);
+      if (dc.numDocuments() != expected.size() || dc.getFirstDocument() != first || dc.getLastDocument() != last) {
+        return "step " + i + ": " + dc.numDocuments() + " documents, expected " + expected.size()
+            + ", or the first or last one differs";
+      }
+
+      if (i % 50 == 0) {
+        for (int index = 0; index < expected.size(); index++) {
+          if (dc.get(index) != expected.get(index) || dc.indexOf(expected.get(index)) != index) {
+            return "step " + i + ": the document at index " + index + " differs";
+          }
+        }
+
+        if (dc.get(-1) != null || dc.get(expected.size()) != null) {
+          return "step " + i + ": a document outside of the collection has been returned";
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that walking the {@link DocumentCollectionCell}s of a linked
+   * collection forwards and backwards visits the same {@link Document}s as
+   * accessing them by index, while {@link Document}s are added and removed at
+   * both ends and in between, until the collection is empty again.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkLinkedCells() {
+    Random random = new Random(SEED);
+    DocumentCollection dc = new DocumentCollection(false, true);
+
+    for (int i = 0; i < 3000; i++) {
+      /* grow during the first half, shrink during the second */
+      int operation = random.nextInt(i < 1500 ? 4 : 8);
+      Document doc = new Document("d" + i, "", "", null, null, generateText(random, 5, 2));
+
+      if (operation == 0) {
+        dc.prependDocument(doc);
+      } else if (operation == 1) {
+        dc.appendDocument(doc);
+      } else if (operation == 2 || operation == 4) {
+        dc.removeFirstDocument();
+      } else if (operation == 3 || operation == 5) {
+        dc.removeLastDocument();
+      } else if (!dc.isEmpty()) {
+        dc.remove(random.nextInt(dc.numDocuments()));
+      }
+
+      if (i % 100 == 0 || dc.isEmpty()) {
+        DocumentCollectionCell cell = dc.getFirstCell();
+        for (int index = 0; index < dc.numDocuments(); index++) {
+          if (cell == null || cell.getDocument() != dc.get(index)) {
+            return "step " + i + ", forwards, the cell at index " + index + " differs";
+          }
+          cell = cell.getNext();
+        }
+
+        if (cell != null) {
+          return "step " + i + ", forwards, more than " + dc.numDocuments() + " cells";
+        }
+
+        cell = dc.getLastCell();
+        for (int index = dc.numDocuments() - 1; index >= 0; index--) {
+          if (cell == null || cell.getDocument() != dc.get(index)) {
+            return "step " + i + ", backwards, the cell at index " + index + " differs";
+          }
+          cell = cell.getPrevious();
+        }
+
+        if (cell != null) {
+          return "step " + i + ", backwards, more than " + dc.numDocuments() + " cells";
+        }
+      }
+    }
+
+    DocumentCollection unlinked = new DocumentCollection();
+    unlinked.appendDocument(new Document("d", "", "", null, null, "wort"));
+    if (unlinked.getFirstCell() != null || unlinked.getLastCell() != null) {
+      return "cells of a collection without links have been linked";
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that queries leave the order of the collection untouched, that a
+   * query sharing no word with any {@link Document} finds nothing, and that a
+   * {@link QueryResult} keeps its {@link Document}s and similarities while
+   * all of them are removed from the collection and new ones are added.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkHeldResults() {
+    Random random = new Random(SEED);
+    DocumentCollection dc = new DocumentCollection();
+    addDocuments(dc, random, 1000);
+    String order = dc.toString();
+
+    List<QueryResult> results = new ArrayList<>();
+    List<List<String>> titles = new ArrayList<>();
+    List<double[]> similarities = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      QueryResult result = dc.match(generateText(random, 3, 2), i % 2 == 0 ? 10 : Integer.MAX_VALUE);
+      results.add(result);
+      titles.add(new ArrayList<>());
+      similarities.add(new double[result.size()]);
+
+      for (int rank = 0; rank < result.size(); rank++) {
+        titles.get(i).add(result.getDocument(rank).getTitle());
+        similarities.get(i)[rank] = result.getSimilarity(rank);
+      }
+    }
+
+    if (!dc.toString().equals(order)) {
+      return "queries have changed the order of the collection";
+    }
+
+    if (dc.match("nirgendwo niemals").size() != 0) {
+      return "a query sharing no word with any document has found something";
+    }
+
+    /* compactions purge the removed documents from the index */
+    while (!dc.isEmpty()) {
+      dc.removeFirstDocument();
+    }
+    addDocuments(dc, random, 1000);
+
+    for (int i = 0; i < results.size(); i++) {
+      QueryResult result = results.get(i);
+
+      if (result.size() != titles.get(i).size()) {
+        return "result " + i + " has changed its size";
+      }
+
+      for (int rank = 0; rank < result.size(); rank++) {
+        Document doc = result.getDocument(rank);
+
+        if (doc == null || !doc.getTitle().equals(titles.get(i).get(rank))
+            || result.getSimilarity(rank) != similarities.get(i)[rank]) {
+          return "result " + i + " has lost " + titles.get(i).get(rank) + " at rank " + (rank + 1);
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that threads interning the same new words in different orders get
+   * the same id for every word, while other threads look them up, and that
+   * the ids of the new words are dense.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkInterning() {
+    TermDictionary dictionary = TermDictionary.getInstance();
+    int numWords = 50000;
+    int firstId = dictionary.size();
+    int[][] ids = new int[4][numWords];
+    AtomicReference<String> failure = new AtomicReference<String>();
+
+    Thread[] threads = new Thread[ids.length + 2];
+    for (int i = 0; i < threads.length; i++) {
+      int thread = i;
+
+      threads[i] = new Thread(() -> {
+        try {
+          for (int j = 0; j < numWords && failure.get() == null; j++) {
+            /* every other thread the other way round */
+            int number = thread % 2 == 0 ? j : numWords - 1 - j;
+            String word = "interned" + number;
+
+            if (thread < ids.length) {
+              ids[thread][number] = dictionary.intern(word);
+            } else {
+              int id = dictionary.getId(word);
+              if (id != -1 && !word.equals(dictionary.getTerm(id))) {
+                failure.compareAndSet(null, "\"" + word + "\" found as \"" + dictionary.getTerm(id) + "\"");
+              }
+            }
+          }
+        } catch (RuntimeException e) {
+          failure.compareAndSet(null, e.toString());
+        }
+      });
+      threads[i].start();
+    }
+
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return "interrupted";
+      }
+    }
+
+    if (failure.get() != null) {
+      return failure.get();
+    }
+
+    for (int number = 0; number < numWords; number++) {
+      String word = "interned" + number;
+      int id = dictionary.getId(word);
+
+      for (int i = 0; i < ids.length; i++) {
+        if (ids[i][number] != id) {
+          return "\"" + word + "\" interned as " + ids[i][number] + ", looked up as " + id;
+        }
+      }
+
+      if (id < firstId || id >= firstId + numWords || !word.equals(dictionary.getTerm(id))) {
+        return "\"" + word + "\" has the id " + id + " of \"" + dictionary.getTerm(id) + "\"";
+      }
+    }
+
+    if (dictionary.size() != firstId + numWords) {
+      return (dictionary.size() - firstId) + " new ids for " + numWords + " new words";
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks the similarities of every {@link Scoring} on a collection of three
+   * {@link Document}s against values calculated by hand.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkScoring() {
+    DocumentCollection dc = new DocumentCollection();
+    dc.setQueryCacheSize(0);
+    /* 3, 2 and 4 words, 3 on average; apfel and kiwi are contained in two documents each */
+    dc.appendDocument(new Document("d0", "", "", null, null, "apfel apfel birne"));
+    dc.appendDocument(new Document("d1", "", "", null, null, "birne kiwi"));
+    dc.appendDocument(new Document("d2", "", "", null, null, "kiwi kiwi kiwi apfel"));
+    String query = "apfel kiwi";
+
+    /* the query vector (1, 1) against (2, 1, 0), (0, 1, 1) and (1, 0, 3) */
+    double[] cosine = { 2 / Math.sqrt(10), 1 / Math.sqrt(2) / Math.sqrt(2), 4 / Math.sqrt(20) };
+
+    /* idf = 1 + ln(3 / (2 + 1)) = 1 */
+    double[] tfIdf = { Math.sqrt(2) / Math.sqrt(3), 1 / Math.sqrt(2), (1 + Math.sqrt(3)) / 2 };
+
+    /* idf = ln(1 + 1.5 / 2.5); k1 * (1 - b + b * length / 3) = 1.2, 0.9 and 1.5 */
+    double idf = Math.log(1.6);
+    double[] bm25 = { idf * 2 * 2.2 / (2 + 1.2), idf * 2.2 / (1 + 0.9), idf * (2.2 / (1 + 1.5) + 3 * 2.2 / (3 + 1.5)) };
+
+    String failure = compareScores(dc.match(query, 3, Scoring.COSINE), cosine);
+    if (failure == null) {
+      failure = compareScores(dc.match(query, 3, Scoring.TF_IDF), tfIdf);
+    }
+    if (failure == null) {
+      failure = compareScores(dc.match(query, 3, Scoring.BM25), bm25);
+    }
+
+    return failure;
+  }
+
+  /**
+   * Compares the similarities of a {@link QueryResult} with the expected
+   * similarities of the {@link Document}s titled <code>d0</code>,
+   * <code>d1</code>, etc.
+   *
+   * @param result   the result to check
+   * @param expected the expected similarity of every {@link Document}
+   * @return the description of the first difference or <code>null</code>, if
+   *         the similarities are equal
+   */
+  private static String compareScores(QueryResult result, double[] expected) {
+    if (result.size() != expected.length) {
+      return "expected " + expected.length + " documents, found " + result.size();
+    }
+
+    for (int i = 0; i < result.size(); i++) {
+      String title = result.getDocument(i).getTitle();
+      double similarity = expected[Integer.parseInt(title.substring(1))];
+
+      if (Math.abs(result.getSimilarity(i) - similarity) > EPSILON) {
+        return title + " has similarity " + result.getSimilarity(i) + ", expected " + similarity;
+      }
+
+      if (i > 0 && result.getSimilarity(i) > result.getSimilarity(i - 1)) {
+        return "rank " + (i + 1) + " is more similar than rank " + i;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that the upper bound of the share of a query word in the
+   * similarity, cf. {@link Scoring#maxScore(double, int, double)}, is not
+   * exceeded by any {@link Document} in the postings list of the word, for
+   * every {@link Scoring}.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkMaxScores() {
+    Random random = new Random(SEED);
+    InvertedIndex index = new InvertedIndex();
+
+    for (int i = 0; i < 500; i++) {
+      index.addDocument(i, new Document("d" + i, "", "", null, null, generateText(random, 40, 3)).getWordCounts());
+    }
+
+    double averageLength = (double) index.getTotalLength() / index.getNumDocuments();
+
+    for (int word = 0; word < NUM_WORDS; word++) {
+      /* the stem of the word, if any document contains it */
+      WordCountsArray stem = Document.parseQuery(generateWord(word)).getWordCounts();
+      Postings list = stem.size() == 0 ? null : index.getPostings(stem.getTermId(0));
+      if (list == null) {
+        continue;
+      }
+
+      for (Scoring scoring : Scoring.values()) {
+        for (int queryCount = 1; queryCount <= 3; queryCount++) {
+          /* the query vector is at least as long as the count of any of its words */
+          double queryNorm = queryCount + random.nextInt(3);
+          double weight = scoring.termWeight(queryCount, list.size(), index.getNumDocuments());
+          double maxScore = scoring.maxScore(weight, list.getMaxCount(), queryNorm);
+
+          PostingsIterator iterator = list.iterator();
+          while (iterator.next()) {
+            int length = index.getLength(iterator.documentId());
+            double score = scoring.termScore(weight, iterator.count(), length, averageLength);
+            double share = scoring.documentScore(score, index.getNorm(iterator.documentId()), length, queryNorm);
+
+            if (share > maxScore * (1 + EPSILON)) {
+              return scoring + ", word " + generateWord(word) + ", document " + iterator.documentId() + ": share "
+                  + share + " exceeds the bound " + maxScore;
+            }
+          }
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that a query repeated after {@link Document}s have been added or
+   * removed, which also compacts the index now and then, is answered from the
+   * modified collection instead of the cache, just like by the same collection
+   * without a cache.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkCacheInvalidation() {
+    Random random = new Random(SEED);
+    DocumentCollection dc = new DocumentCollection();
+    DocumentCollection uncached = new DocumentCollection();
+    uncached.setQueryCacheSize(0);
+
+    /* a document added after a query must be found by the same query */
+    String query = generateText(random, 3, 2);
+    dc.match(query, 1);
+    dc.appendDocument(new Document("new", "", "", null, null, query));
+    QueryResult result = dc.match(query, 1);
+    if (result.size() != 1 || !result.getDocument(0).getTitle().equals("new")) {
+      return "the added document has not been found";
+    }
+
+    dc.remove(0);
+    if (dc.match(query, 1).size() != 0) {
+      return "the removed document has been found";
+    }
+
+    /* a few repeated queries, so that most of them hit the cache until the next modification */
+    String[] queries = new String[5];
+    for (int i = 0; i < queries.length; i++) {
+      queries[i] = generateText(random, 3, 2);
+    }
+
+    for (int i = 0; i < 2000; i++) {
+      String text = generateText(random, 20, 3);
+      dc.appendDocument(new Document("d" + i, "", "", null, null, text));
+      uncached.appendDocument(new Document("d" + i, "", "", null, null, text));
+
+      /* remove about as many documents as are added, so compactions happen */
+      if (dc.numDocuments() > 200) {
+        int index = random.nextInt(dc.numDocuments());
+        dc.remove(index);
+        uncached.remove(index);
+      }
+
+      for (int j = 0; j < 3; j++) {
+        String repeated = queries[random.nextInt(queries.length)];
+        QueryResult expected = uncached.match(repeated, 10);
+        String failure = compare(dc.match(repeated, 10), expected, expected.size());
+
+        if (failure != null) {
+          return "after " + (i + 1) + " documents, query \"" + repeated + "\": " + failure;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that the cache of a {@link DocumentCollection} keeps the results
+   * of the most recently used queries and evicts the least recently used one.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkCacheEviction() {
+    Random random = new Random(SEED);
+    DocumentCollection dc = new DocumentCollection();
+    addDocuments(dc, random, 100);
+    dc.setQueryCacheSize(2);
+
+    /* a cached result is returned as the same object */
+    QueryResult first = dc.match(generateWord(0), 10);
+    QueryResult second = dc.match(generateWord(1), 10);
+    if (dc.match(generateWord(0), 10) != first) {
+      return "the result of the first query has not been cached";
+    }
+
+    /* the second query is now the least recently used one */
+    QueryResult third = dc.match(generateWord(2), 10);
+    if (dc.match(generateWord(0), 10) != first || dc.match(generateWord(2), 10) != third) {
+      return "a recently used result has been evicted";
+    }
+    if (dc.match(generateWord(1), 10) == second) {
+      return "the least recently used result has not been evicted";
+    }
+
+    /* a capacity of 0 disables the cache */
+    dc.setQueryCacheSize(0);
+    if (dc.match(generateWord(0), 10) == first || dc.match(generateWord(0), 10) == dc.match(generateWord(0), 10)) {
+      return "results have been cached with a capacity of 0";
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that every word of a {@link WordCountsArray} is found at its index
+   * with its count, also after sorting and changing counts, and that words not
+   * administered are not found, even if they are known to the
+   * {@link TermDictionary}.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkWordLookup() {
+    Random random = new Random(SEED);
+    WordCountsArray wca = new WordCountsArray(0);
+    Map<String, Integer> expected = new HashMap<>();
+
+    for (int i = 0; i < 20000; i++) {
+      String word = generateWord(random.nextInt(5000));
+      int count = random.nextInt(3);
+      wca.add(word, count);
+      expected.merge(word, count, Integer::sum);
+    }
+
+    /* known to the dictionary, but not administered */
+    new WordCountsArray(1).add(generateWord(5000), 1);
+
+    for (int pass = 0; pass < 3; pass++) {
+      if (wca.size() != expected.size()) {
+        return "pass " + pass + ", " + wca.size() + " words administered, expected " + expected.size();
+      }
+
+      for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+        int index = wca.getIndexOfWord(entry.getKey());
+
+        if (!entry.getKey().equals(wca.getWord(index)) || wca.getCount(index) != entry.getValue()
+            || wca.getCount(entry.getKey()) != entry.getValue()) {
+          return "pass " + pass + ", \"" + entry.getKey() + "\" found at " + index + " as \"" + wca.getWord(index)
+              + "\" with " + wca.getCount(index) + ", expected " + entry.getValue();
+        }
+      }
+
+      if (wca.getIndexOfWord(generateWord(5000)) != -1 || wca.getIndexOfWord("nirgendwo") != -1
+          || wca.getCount(generateWord(5000)) != -1) {
+        return "pass " + pass + ", a word not administered has been found";
+      }
+
+      /* the words move, the counts change */
+      if (pass == 0) {
+        wca.sort();
+      } else {
+        for (int index = 0; index < wca.size(); index += 7) {
+          wca.setCount(index, index);
+          expected.put(wca.getWord(index), index);
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that the similarity of two {@link WordCountsArray}s with different
+   * words is the cosine over the words they share, no matter which of them is
+   * asked, and that neither of them gets the words of the other.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkSparseSimilarity() {
+    Random random = new Random(SEED);
+
+    for (int i = 0; i < 200; i++) {
+      WordCountsArray[] wcas = new WordCountsArray[2];
+      List<Map<String, Integer>> counts = new ArrayList<>();
+
+      for (int j = 0; j < wcas.length; j++) {
+        wcas[j] = new WordCountsArray(0);
+        counts.add(new HashMap<>());
+
+        int numWords = random.nextInt(200);
+        for (int w = 0; w < numWords; w++) {
+          String word = generateWord(random.nextInt(1000));
+          int count = random.nextInt(4);
+          wcas[j].add(word, count);
+          counts.get(j).merge(word, count, Integer::sum);
+        }
+      }
+
+      long scalarProduct = 0;
+      long[] squaredNorms = new long[2];
+      for (int j = 0; j < wcas.length; j++) {
+        for (Map.Entry<String, Integer> entry : counts.get(j).entrySet()) {
+          squaredNorms[j] += (long) entry.getValue() * entry.getValue();
+
+          if (j == 0) {
+            scalarProduct += (long) entry.getValue() * counts.get(1).getOrDefault(entry.getKey(), 0);
+          }
+        }
+      }
+
+      double expected = 0;
+      if (squaredNorms[0] != 0 && squaredNorms[1] != 0) {
+        expected = scalarProduct / (Math.sqrt(squaredNorms[0]) * Math.sqrt(squaredNorms[1]));
+      }
+
+      double similarity = wcas[0].computeSimilarity(wcas[1]);
+      if (Math.abs(similarity - expected) > EPSILON || similarity != wcas[1].computeSimilarity(wcas[0])) {
+        return "pair " + i + ": similarity " + similarity + " and " + wcas[1].computeSimilarity(wcas[0])
+            + ", expected " + expected;
+      }
+
+      if (wcas[0].size() != counts.get(0).size() || wcas[1].size() != counts.get(1).size()) {
+        return "pair " + i + ": the words of one array have been added to the other";
+      }
+
+      if (wcas[0].computeSimilarity(null) != 0) {
+        return "pair " + i + ": the similarity with null is not 0";
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that the cached length of a {@link WordCountsArray} follows every
+   * change of its counts by {@link WordCountsArray#add(String, int)} and
+   * {@link WordCountsArray#setCount(int, int)}, and that similarities are
+   * computed with the current length.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkNorms() {
+    Random random = new Random(SEED);
+    WordCountsArray wca = new WordCountsArray(0);
+    WordCountsArray other = new WordCountsArray(0);
+    other.add(generateWord(0), 1);
+    Map<String, Integer> expected = new HashMap<>();
+
+    for (int i = 0; i < 2000; i++) {
+      int operation = random.nextInt(3);
+
+      if (operation == 0 || wca.size() == 0) {
+        String word = generateWord(random.nextInt(50));
+        int count = random.nextInt(3);
+        wca.add(word, count);
+        expected.merge(word, count, Integer::sum);
+      } else {
+        /* negative counts are set to 0 */
+        int index = random.nextInt(wca.size());
+        int count = random.nextInt(6) - 1;
+        wca.setCount(index, count);
+        expected.put(wca.getWord(index), Math.max(count, 0));
+      }
+
+      long squaredNorm = 0;
+      for (int count : expected.values()) {
+        squaredNorm += (long) count * count;
+      }
+
+      double norm = Math.sqrt(squaredNorm);
+      if (wca.getNorm() != norm) {
+        return "step " + i + ": length " + wca.getNorm() + ", expected " + norm;
+      }
+
+      double similarity = norm == 0 ? 0 : expected.getOrDefault(generateWord(0), 0) / norm;
+      if (Math.abs(wca.computeSimilarity(other) - similarity) > EPSILON) {
+        return "step " + i + ": similarity " + wca.computeSimilarity(other) + ", expected " + similarity;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that words separated by any whitespace, punctuation or other
+   * characters that are neither letters nor digits, including characters
+   * outside the Basic Multilingual Plane, are counted just like the same words
+   * separated by single spaces.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkTokenizing() {
+    Random random = new Random(SEED);
+    String[] words = { "Haus", "Häuser", "straße", "x2", "2024", "\uD835\uDC9C\uD835\uDCB7c", "Wort", "spielen" };
+    String[] separators = { " ", "  ", "\t", "\n", "\r\n", ", ", "!?", "--", "\u00A0", "\uD83D\uDE00", "(", "." };
+
+    for (int i = 0; i < 200; i++) {
+      StringBuilder content = new StringBuilder();
+      StringBuilder spaced = new StringBuilder();
+      int numWords = random.nextInt(50);
+
+      for (int j = 0; j < numWords; j++) {
+        if (j > 0 || random.nextBoolean()) {
+          content.append(separators[random.nextInt(separators.length)]);
+        }
+
+        String word = words[random.nextInt(words.length)];
+        content.append(word);
+        spaced.append(word).append(' ');
+      }
+
+      if (random.nextBoolean()) {
+        content.append(separators[random.nextInt(separators.length)]);
+      }
+
+      WordCountsArray actual = new Document("t", "", "", null, null, content.toString()).getWordCounts();
+      WordCountsArray expected = new Document("t", "", "", null, null, spaced.toString()).getWordCounts();
+
+      int numCounted = 0;
+      for (int j = 0; j < actual.size(); j++) {
+        numCounted += actual.getCount(j);
+      }
+
+      if (!actual.equals(expected) || numCounted != numWords) {
+        return "\"" + content + "\" counted as " + actual + ", expected " + expected;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that the {@link SuffixTrie} of {@link Document#SUFFICES} finds the
+   * longest suffix of every word, just like comparing the word with every
+   * suffix, for words ending with any two suffices, with a single suffix, with
+   * parts of suffices and with none.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkSuffixTrie() {
+    SuffixTrie trie = new SuffixTrie(Document.SUFFICES);
+    List<String> words = new ArrayList<>(Arrays.asList("", "x", "haus", "Spielen", "ENDE"));
+
+    for (String first : Document.SUFFICES) {
+      words.add(first);
+      words.add("x" + first);
+      words.add(first.substring(1));
+      words.add(first.toUpperCase());
+
+      for (String second : Document.SUFFICES) {
+        words.add(first + second);
+        words.add("st" + first + second);
+      }
+    }
+
+    for (String word : words) {
+      int expected = 0;
+      for (String suffix : Document.SUFFICES) {
+        if (word.endsWith(suffix)) {
+          expected = Math.max(expected, suffix.length());
+        }
+      }
+
+      if (trie.longestSuffixLength(word) != expected) {
+        return "longest suffix of \"" + word + "\" has " + trie.longestSuffixLength(word) + " characters, expected "
+            + expected;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that the {@link StemCache} keeps as many words with the same set
+   * as a set has slots, drops the least recently used one of them, finds words
+   * within a longer text and counts hits and misses exactly, and that a
+   * {@link Document} repeating a few words stems each of them only once.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkStemCache() {
+    /* a single set, so all words share it */
+    StemCache cache = new StemCache(StemCache.WAYS);
+    for (int i = 0; i < StemCache.WAYS; i++) {
+      cache.put("wort" + i + "en", "wort" + i);
+    }
+
+    for (int i = 0; i < StemCache.WAYS; i++) {
+      if (!("wort" + i).equals(cache.get("wort" + i + "en"))) {
+        return "\"wort" + i + "en\" has been dropped from a set with " + StemCache.WAYS + " slots";
+      }
+    }
+
+    /* the first word has been used least recently, unless it is used again */
+    cache.get("wort0en");
+    cache.put("neuen", "neu");
+    if (cache.get("wort0en") == null || cache.get("wort1en") != null || cache.get("neuen") == null) {
+      return "the least recently used word has not been dropped";
+    }
+
+    String text = "die wort2en und";
+    if (!"wort2".equals(cache.get(text, 4, 11)) || cache.get(text, 4, 10) != null || cache.get(text, 0, 3) != null) {
+      return "words within a text found wrongly";
+    }
+
+    if (cache.getHits() != StemCache.WAYS + 4 || cache.getMisses() != 3) {
+      return cache.getHits() + " hits and " + cache.getMisses() + " misses counted, expected "
+          + (StemCache.WAYS + 4) + " and 3";
+    }
+
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      content.append(generateWord(i % 5)).append("en ");
+    }
+
+    StemCache shared = Document.getStemCache();
+    shared.resetStatistics();
+    new Document("stems", "", "", null, null, content.toString());
+    if (shared.getHits() + shared.getMisses() != 1000 || shared.getMisses() > 5) {
+      return "1000 words with 5 different stems looked up with " + shared.getHits() + " hits and "
+          + shared.getMisses() + " misses";
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that {@link WordCountsArray#isSorted()} tells whether the words
+   * are in lexicographical order while words are added in and out of order,
+   * and that sorting words already in order leaves them where they are.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkSortedFlag() {
+    Random random = new Random(SEED);
+
+    for (int i = 0; i < 500; i++) {
+      WordCountsArray wca = new WordCountsArray(0);
+      List<String> words = new ArrayList<>();
+
+      int numWords = random.nextInt(30);
+      for (int j = 0; j < numWords; j++) {
+        /* mostly ascending, now and then a word out of order */
+        int number = random.nextInt(8) == 0 ? random.nextInt(300) : 10 * j + random.nextInt(10);
+        String word = String.format("wort%03d", number);
+        wca.add(word, 1);
+        if (!words.contains(word)) {
+          words.add(word);
+        }
+
+        /* ask now and then, so the flag is tracked across additions */
+        if (random.nextInt(3) == 0) {
+          List<String> sorted = new ArrayList<>(words);
+          Collections.sort(sorted);
+
+          if (wca.isSorted() != sorted.equals(words)) {
+            return "array " + i + ", " + words + " reported as sorted " + wca.isSorted();
+          }
+        }
+
+        if (random.nextInt(10) == 0) {
+          wca.sort();
+          Collections.sort(words);
+        }
+      }
+
+      wca.sort();
+      Collections.sort(words);
+      for (int j = 0; j < words.size(); j++) {
+        if (!wca.isSorted() || !words.get(j).equals(wca.getWord(j))) {
+          return "array " + i + ", \"" + wca.getWord(j) + "\" at " + j + " after sorting, expected \"" + words.get(j)
+              + "\"";
+        }
+      }
+
+      /* sorting again moves nothing */
+      wca.setCount(0, 5);
+      wca.sort();
+      for (int j = 0; j < words.size(); j++) {
+        if (!words.get(j).equals(wca.getWord(j)) || j == 0 && wca.getCount(0) != 5) {
+          return "array " + i + ", sorting a sorted array has moved \"" + words.get(j) + "\"";
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Checks, that {@link WordCountsArray#sort()} orders words just like
+   * {@link Arrays#sort(Object[])}, including non-ASCII letters, digits, long
+   * shared prefixes and groups of words around the size sorted by insertion
+   * sort, and that every word is found at its new position with its count
+   * afterwards.
+   *
+   * @return the description of the failure or <code>null</code>, if the check
+   *         has passed
+   */
+  public static String checkSort() {
+    Random random = new Random(SEED);
+    String prefix = "donaudampfschifffahrtsgesellschaft";
+    List<String> words = new ArrayList<String>();
+
+    for (String word : new String[] { "straße", "strasse", "äpfel", "apfel", "öl", "zähler", "zahl", "ß", "42", "4711",
+        "0815", "x1", "x", "é", "ü" }) {
+      words.add(word);
+    }
+
+    /* groups of one word less, as many and one word more than insertion sort handles */
+    for (int size = 11; size <= 13; size++) {
+      for (int i = 0; i < size; i++) {
+        words.add("gruppe" + size + (char) ('a' + i % 2) + generateWord(i));
+      }
+    }
+
+    /* words sharing long prefixes, some of them prefixes of others */
+    for (int i = 0; i < 100; i++) {
+      words.add(prefix.substring(0, 1 + random.nextInt(prefix.length())) + (random.nextBoolean() ? generateWord(i) : ""));
+    }
+
+    for (int i = 0; i < 200; i++) {
+      words.add(generateWord(random.nextInt(NUM_WORDS * NUM_WORDS)));
+    }
+
+    /* every word once, so that its count is its length */
+    words = new ArrayList<String>(new LinkedHashSet<String>(words));
+
+    for (int run = 0; run < 10; run++) {
+      Collections.shuffle(words, random);
+
+      WordCountsArray wca = new WordCountsArray(1);
+      for (int i = 0; i < words.size(); i++) {
+        wca.add(words.get(i), words.get(i).length());
+      }
+
+      String[] expected = new String[wca.size()];
+      for (int i = 0; i < wca.size(); i++) {
+        expected[i] = wca.getWord(i);
+      }
+      Arrays.sort(expected);
+
+      wca.sort();
+
+      for (int i = 0; i < expected.length; i++) {
+        if (!expected[i].equals(wca.getWord(i))) {
+          return "run " + run + ", position " + i + ": expected " + expected[i] + ", found " + wca.getWord(i);
+        }
+
+        if (wca.getIndexOfWord(expected[i]) != i || wca.getCount(expected[i]) != expected[i].length()) {
+          return "run " + run + ": " + expected[i] + " found at " + wca.getIndexOfWord(expected[i]) + " with count "
+              + wca.getCount(expected[i]) + ", expected " + i + " with count " + expected[i].length();
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Compares the answers of two collections to generated queries, for every
+   * {@link Scoring}.
+   *
+   * @param actual   the collection to check
+   * @param expected the collection giving the expected answers
+   * @param random   the source of random choices
+   * @return the description of the first difference or <code>null</code>, if
+   *         the collections give the same answers
+   */
+  private static String compareQueries(DocumentCollection actual, DocumentCollection expected, Random random) {
+    if (!actual.toString().equals(expected.toString())) {
+      return "the documents differ";
+    }
+
+    for (Scoring scoring : Scoring.values()) {
+      for (int i = 0; i < 50; i++) {
+        String query = generateText(random, 6, 2);
+        QueryResult result = expected.match(query, 20, scoring);
+        String failure = compare(actual.match(query, 20, scoring), result, result.size());
+
+        if (failure != null) {
+          return scoring + ", query \"" + query + "\": " + failure;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Deletes the specified directory with everything in it.
+   *
+   * @param directory the directory, may be <code>null</code>
+   */
+  private static void delete(Path directory) {
+    if (directory == null) {
+      return;
+    }
+
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    } catch (IOException e) {
+      /* a temporary directory left behind does not matter */
+    }
+  }
+
+  /**
+   * Adds the specified number of generated {@link Document}s to the specified
+   * collection, removing one now and then.
+   *
+   * @param dc           the collection
+   * @param random       the source of random choices
+   * @param numDocuments the number of documents to add
+   */
+  private static void addDocuments(DocumentCollection dc, Random random, int numDocuments) {
+    for (int i = 0; i < numDocuments; i++) {
+      dc.appendDocument(new Document("d" + i, "", "", null, null, generateText(random, 40, 3)));
+
+      if (random.nextInt(10) == 0) {
+        dc.remove(random.nextInt(dc.numDocuments()));
+      }
+    }
+  }
+
+  /**
+   * Generates a text of at least one and at most the specified number of
+   * words. The higher the skew, the more often the first words of the
+   * vocabulary are chosen, just like common words in a natural language.
+   *
+   * @param random   the source of random choices
+   * @param maxWords the maximum number of words
+   * @param skew     the skew of the distribution of the words, at least
+   *                 <code>1</code>
+   * @return the text
+   */
+  private static String generateText(Random random, int maxWords, double skew) {
+    StringBuilder text = new StringBuilder();
+    int numWords = 1 + random.nextInt(maxWords);
+
+    for (int i = 0; i < numWords; i++) {
+      int word = (int) (Math.pow(random.nextDouble(), skew) * NUM_WORDS);
+      text.append(generateWord(word)).append(' ');
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Returns the word with the specified number in the vocabulary of the
+   * generated texts, which only consists of lowercase letters.
+   *
+   * @param number the number of the word
+   * @return the word
+   */
+  private static String generateWord(int number) {
+    StringBuilder word = new StringBuilder("wort");
+
+    do {
+      word.append((char) ('a' + number % 26));
+      number /= 26;
+    } while (number > 0);
+
+    return word.toString();
+  }
+
+  /**
+   * Compares the first entries of two {@link QueryResult}s by their
+   * {@link Document}s and similarities.
+   *
+   * @param actual     the result to check
+   * @param expected   the expected result
+   * @param numEntries the number of entries both results must have
+   * @return the description of the first difference or <code>null</code>, if
+   *         the results are equal
+   */
+  private static String compare(QueryResult actual, QueryResult expected, int numEntries) {
+    if (actual.size() != numEntries) {
+      return "expected " + numEntries + " documents, found " + actual.size();
+    }
+
+    for (int i = 0; i < numEntries; i++) {
+      if (!actual.getDocument(i).getTitle().equals(expected.getDocument(i).getTitle())
+          || Math.abs(actual.getSimilarity(i) - expected.getSimilarity(i)) > EPSILON) {
+        return "at rank " + (i + 1) + " expected " + expected.getDocument(i).getTitle() + " ("
+            + expected.getSimilarity(i) + "), found " + actual.getDocument(i).getTitle() + " ("
+            + actual.getSimilarity(i) + ")";
+      }
+    }
+
+    return null;
+  }
+}
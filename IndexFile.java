@@ -0,0 +1,881 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class implements the binary file format used to persist a
+ * {@link DocumentCollection} together with its {@link InvertedIndex}.
+ *
+ * A file consists of the following sections, all numbers stored big-endian:
+ * <ol>
+ * <li>a header: a magic number and the format version</li>
+ * <li>the words, each as the length of its UTF-8 encoding followed by the
+ * encoding; the position of a word in this section is its id in the file</li>
+ * <li>the offset of every word, aligned to four bytes, followed by an open
+ * addressing hash table of the words: for every slot, the hash code of the
+ * word and its id in the file plus one, or two zeros for an empty slot</li>
+ * <li>the documents in ascending order of their ids, each with its metadata
+ * and its words and counts, followed by the id and the offset of every
+ * document</li>
+ * <li>the order of the documents in the collection as a list of ids</li>
+ * <li>the lengths of the word count vectors of all ids in the range, aligned
+ * to eight bytes, followed by the numbers of words of all ids in the range;
+ * <code>0</code> for ids without a document</li>
+ * <li>the postings list of every word: its size, its highest count and the
+ * number of bytes of its encoded entries, followed by the document id
+ * preceding every block together with the position of the block, and the
+ * encoded entries, cf. {@link Postings}, aligned to four bytes; followed by
+ * the offset of every list</li>
+ * <li>a footer of fixed size: the number of words and documents, the range
+ * of document ids covered by the file, the number of postings entries, the
+ * total number of words of all documents and the offsets of the tables
+ * above</li>
+ * </ol>
+ *
+ * When a file is read, it is mapped into memory and only the footer is read
+ * right away. Everything else is used in place: the postings list of a word
+ * is looked up in the hash table the first time it is needed, and a
+ * {@link Document} is only created from its metadata and word counts when it
+ * is requested, cf. {@link IndexFile#readDocument(int)}. Words are added to
+ * the {@link TermDictionary} only as they are encountered this way, so
+ * opening a file takes the same time no matter how many words and documents
+ * it contains.
+ *
+ * Since a single mapping is limited to 2 GB, so is the size of a file. This
+ * is a hard limit: a file that would exceed it is not written at all, cf.
+ * {@link IndexFile#write(String, Document[], int[], int[], int[], int, int, InvertedIndex[])}.
+ *
+ * The same format is used for a whole collection and for a single
+ * {@link Segment} of a {@link SegmentDirectory}.
+ *
+ * @see DocumentCollection#save(String)
+ * @see DocumentCollection#open(String)
+ *
+ */
+public final class IndexFile {
+  /**
+   * the first four bytes of every index file
+   */
+  private static final int MAGIC = 0x49445846;
+
+  /**
+   * the version of the file format
+   */
+  private static final int FORMAT_VERSION = 7;
+
+  /**
+   * the number of bytes of the footer
+   */
+  private static final int FOOTER_BYTES = 13 * Integer.BYTES + Long.BYTES;
+
+  /**
+   * marks a plain {@link Document}
+   */
+  private static final byte KIND_DOCUMENT = 0;
+
+  /**
+   * marks a {@link LinkedDocument}
+   */
+  private static final byte KIND_LINKED_DOCUMENT = 1;
+
+  /**
+   * the mapped file
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * the lowest document id covered by the file
+   */
+  private final int baseId;
+
+  /**
+   * the number of document ids covered by the file
+   */
+  private final int numIds;
+
+  /**
+   * the offset of every word in the file, indexed by its id in the file
+   */
+  private final IntBuffer termOffsets;
+
+  /**
+   * the hash table of the words, two numbers per slot
+   */
+  private final IntBuffer termTable;
+
+  /**
+   * the id in the {@link TermDictionary} plus one of every word, indexed by its
+   * id in the file; <code>0</code> for words not looked up yet
+   */
+  private final int[] termIds;
+
+  /**
+   * the ids of the documents, in ascending order
+   */
+  private final IntBuffer documentIds;
+
+  /**
+   * the offset of the document with the id at the same position
+   */
+  private final IntBuffer documentOffsets;
+
+  /**
+   * the order of the documents in the collection, as ids
+   */
+  private final IntBuffer order;
+
+  /**
+   * the offset of every postings list in the file, indexed by the id of its
+   * word in the file
+   */
+  private final IntBuffer postingsOffsets;
+
+  /**
+   * the postings lists read so far, indexed by the id of their word in the
+   * file
+   */
+  private final AtomicReferenceArray<Postings> postings;
+
+  /**
+   * the arena of the postings lists, the mapped file itself
+   */
+  private final PostingsArena arena;
+
+  /**
+   * the index of the documents, using the mapped file in place
+   */
+  private final InvertedIndex index;
+
+  /**
+   * Constructs the contents of an index file from its mapping, cf.
+   * {@link IndexFile#read(String)}.
+   *
+   * @param buffer the mapped file, positioned at its footer
+   */
+  private IndexFile(ByteBuffer buffer) {
+    int numTerms = buffer.getInt();
+    int numDocuments = buffer.getInt();
+    this.baseId = buffer.getInt();
+    this.numIds = buffer.getInt();
+    int numEntries = buffer.getInt();
+    long totalLength = buffer.getLong();
+    int termOffsetsPosition = buffer.getInt();
+    int termTablePosition = buffer.getInt();
+    int termTableSize = buffer.getInt();
+    int documentsPosition = buffer.getInt();
+    int orderPosition = buffer.getInt();
+    int normsPosition = buffer.getInt();
+    int lengthsPosition = buffer.getInt();
+    int postingsPosition = buffer.getInt();
+
+    this.buffer = buffer;
+    this.termOffsets = slice(buffer, termOffsetsPosition, numTerms);
+    this.termTable = slice(buffer, termTablePosition, 2 * termTableSize);
+    this.termIds = new int[numTerms];
+    this.documentIds = slice(buffer, documentsPosition, numDocuments);
+    this.documentOffsets = slice(buffer, documentsPosition + numDocuments * Integer.BYTES, numDocuments);
+    this.order = slice(buffer, orderPosition, numDocuments);
+    this.postingsOffsets = slice(buffer, postingsPosition, numTerms);
+    this.postings = new AtomicReferenceArray<Postings>(numTerms);
+    this.arena = new PostingsArena(buffer);
+
+    DoubleBuffer norms = buffer.slice(normsPosition, this.numIds * Double.BYTES).asDoubleBuffer();
+    IntBuffer lengths = slice(buffer, lengthsPosition, this.numIds);
+    this.index = new InvertedIndex(this, norms, lengths, numDocuments, totalLength, numEntries, this.baseId);
+  }
+
+  /**
+   * Returns the specified number of ints of the specified buffer as a buffer
+   * of its own.
+   *
+   * @param buffer   the buffer
+   * @param position the position of the first int
+   * @param length   the number of ints
+   * @return the ints
+   */
+  private static IntBuffer slice(ByteBuffer buffer, int position, int length) {
+    return buffer.slice(position, length * Integer.BYTES).asIntBuffer();
+  }
+
+  /**
+   * Returns the lowest document id covered by the file.
+   *
+   * @return the base id
+   */
+  public int getBaseId() {
+    return this.baseId;
+  }
+
+  /**
+   * Returns the number of document ids covered by the file. Every document id
+   * of the file is lower than the base id plus this number.
+   *
+   * @return the number of document ids
+   */
+  public int getNumIds() {
+    return this.numIds;
+  }
+
+  /**
+   * Returns the number of documents of the file.
+   *
+   * @return the number of documents
+   */
+  public int getNumDocuments() {
+    return this.documentIds.capacity();
+  }
+
+  /**
+   * Returns the id of the document at the specified position. The documents
+   * of a file are in ascending order of their ids.
+   *
+   * @param position the position of the document
+   * @return the id of the document
+   */
+  public int getDocumentId(int position) {
+    return this.documentIds.get(position);
+  }
+
+  /**
+   * Returns the order of the documents in the collection, as ids.
+   *
+   * @return the order of the documents
+   */
+  public int[] getOrder() {
+    int[] order = new int[this.order.capacity()];
+    this.order.get(0, order);
+    return order;
+  }
+
+  /**
+   * Returns the index of the documents, which uses the mapped file in place.
+   *
+   * @return the index
+   */
+  public InvertedIndex getIndex() {
+    return this.index;
+  }
+
+  /**
+   * Writes the specified documents and their index to the specified file.
+   *
+   * The postings lists of the documents are taken from the specified indexes,
+   * which must cover ascending ranges of document ids, like the
+   * {@link Segment}s of a collection. Entries of documents that are not written
+   * are skipped.
+   *
+   * The file is written next to the specified file first, forced to disk and
+   * then moved in place, so a collection currently using the old file is not
+   * disturbed, and after a crash either the old or the new file is found
+   * completely.
+   *
+   * A file may not exceed 2 GB, so that it can be mapped as a whole. If the
+   * specified documents and their index do not fit, the file is not written
+   * and an {@link IOException} is thrown; the documents have to be split into
+   * several files, e.g. by storing them in a {@link SegmentDirectory}.
+   *
+   * @param fileName  the name of the file
+   * @param documents the documents, in ascending order of their ids
+   * @param ids       the ids of the documents in the specified indexes
+   * @param newIds    the ids the documents get in the file, in ascending order
+   * @param order     the order of the documents in the collection, as
+   *                  positions in <code>documents</code>
+   * @param baseId    the lowest document id covered by the file
+   * @param numIds    the number of document ids covered by the file
+   * @param indexes   the indexes of the documents, ordered by their base ids
+   * @throws IOException if the file could not be written or would exceed
+   *                     2 GB
+   */
+  public static void write(String fileName, Document[] documents, int[] ids, int[] newIds, int[] order, int baseId,
+      int numIds, InvertedIndex[] indexes) throws IOException {
+    TermDictionary dictionary = TermDictionary.getInstance();
+
+    /* give every word used by the documents an id in the file */
+    int[] fileTermIds = new int[dictionary.size()];
+    int[] termIds = new int[dictionary.size()];
+    int numTerms = 0;
+
+    for (int i = 0; i < fileTermIds.length; i++) {
+      fileTermIds[i] = -1;
+    }
+
+    for (int i = 0; i < documents.length; i++) {
+      WordCountsArray wca = documents[i].getWordCounts();
+
+      for (int j = 0; j < wca.size(); j++) {
+        if (fileTermIds[wca.getTermId(j)] == -1) {
+          fileTermIds[wca.getTermId(j)] = numTerms;
+          termIds[numTerms] = wca.getTermId(j);
+          numTerms++;
+        }
+      }
+    }
+
+    /* the new id of every document, or -1 if it is not written, by old id */
+    int firstId = ids.length == 0 ? 0 : ids[0];
+    int[] idMap = new int[ids.length == 0 ? 0 : ids[ids.length - 1] - firstId + 1];
+    for (int i = 0; i < idMap.length; i++) {
+      idMap[i] = -1;
+    }
+    for (int i = 0; i < ids.length; i++) {
+      idMap[ids[i] - firstId] = newIds[i];
+    }
+
+    /* the length and size of every written id, 0 for ids without a document */
+    double[] norms = new double[numIds];
+    int[] lengths = new int[numIds];
+    int indexPosition = 0;
+    for (int i = 0; i < ids.length; i++) {
+      while (indexPosition + 1 < indexes.length && indexes[indexPosition + 1].getBaseId() <= ids[i]) {
+        indexPosition++;
+      }
+      norms[newIds[i] - baseId] = indexes[indexPosition].getNorm(ids[i]);
+      lengths[newIds[i] - baseId] = indexes[indexPosition].getLength(ids[i]);
+    }
+
+    Path path = Paths.get(fileName);
+    Path tmpPath = Paths.get(fileName + ".tmp");
+
+    try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+
+      int[] termOffsets = new int[numTerms];
+      for (int i = 0; i < numTerms; i++) {
+        termOffsets[i] = out.size();
+        writeString(out, dictionary.getTerm(termIds[i]));
+      }
+
+      align(out, Integer.BYTES);
+      int termOffsetsPosition = out.size();
+      for (int i = 0; i < numTerms; i++) {
+        out.writeInt(termOffsets[i]);
+      }
+
+      /* an open addressing hash table of the words, at most half full */
+      int termTableSize = Integer.highestOneBit(Math.max(2 * numTerms, 1)) * 2;
+      int[] termTable = new int[2 * termTableSize];
+      for (int i = 0; i < numTerms; i++) {
+        int hash = dictionary.getTerm(termIds[i]).hashCode();
+        int slot = slotOf(hash, termTableSize);
+
+        while (termTable[2 * slot + 1] != 0) {
+          slot = (slot + 1) & (termTableSize - 1);
+        }
+
+        termTable[2 * slot] = hash;
+        termTable[2 * slot + 1] = i + 1;
+      }
+
+      int termTablePosition = out.size();
+      for (int i = 0; i < termTable.length; i++) {
+        out.writeInt(termTable[i]);
+      }
+
+      int[] documentOffsets = new int[documents.length];
+      for (int i = 0; i < documents.length; i++) {
+        documentOffsets[i] = out.size();
+        writeDocument(out, documents[i], fileTermIds);
+      }
+
+      align(out, Integer.BYTES);
+      int documentsPosition = out.size();
+      for (int i = 0; i < documents.length; i++) {
+        out.writeInt(newIds[i]);
+      }
+      for (int i = 0; i < documents.length; i++) {
+        out.writeInt(documentOffsets[i]);
+      }
+
+      int orderPosition = out.size();
+      for (int i = 0; i < order.length; i++) {
+        out.writeInt(newIds[order[i]]);
+      }
+
+      /* align the lengths, so they can be read in place */
+      align(out, Double.BYTES);
+      int normsPosition = out.size();
+      for (int i = 0; i < numIds; i++) {
+        out.writeDouble(norms[i]);
+      }
+
+      int lengthsPosition = out.size();
+      long totalLength = 0;
+      for (int i = 0; i < numIds; i++) {
+        out.writeInt(lengths[i]);
+        totalLength += lengths[i];
+      }
+
+      int[] postingsOffsets = new int[numTerms];
+      int numEntries = 0;
+      for (int i = 0; i < numTerms; i++) {
+        postingsOffsets[i] = out.size();
+        numEntries += writePostings(out, termIds[i], indexes, idMap, firstId);
+      }
+
+      int postingsPosition = out.size();
+      for (int i = 0; i < numTerms; i++) {
+        out.writeInt(postingsOffsets[i]);
+      }
+
+      /* the size saturates at Integer.MAX_VALUE, so every offset written so far is exact */
+      if (out.size() > Integer.MAX_VALUE - FOOTER_BYTES) {
+        throw new IOException("index file exceeds the limit of 2 GB: " + fileName);
+      }
+
+      out.writeInt(numTerms);
+      out.writeInt(documents.length);
+      out.writeInt(baseId);
+      out.writeInt(numIds);
+      out.writeInt(numEntries);
+      out.writeLong(totalLength);
+      out.writeInt(termOffsetsPosition);
+      out.writeInt(termTablePosition);
+      out.writeInt(termTableSize);
+      out.writeInt(documentsPosition);
+      out.writeInt(orderPosition);
+      out.writeInt(normsPosition);
+      out.writeInt(lengthsPosition);
+      out.writeInt(postingsPosition);
+
+      out.flush();
+      channel.force(true);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmpPath);
+      throw e;
+    }
+
+    replace(tmpPath, path);
+  }
+
+  /**
+   * Moves the specified file, which has been forced to disk, in place of the
+   * other one and forces the directory entry to disk as well, so the move
+   * survives a crash.
+   *
+   * @param tmpPath the file
+   * @param path    the file to replace
+   * @throws IOException if the file could not be moved
+   */
+  static void replace(Path tmpPath, Path path) throws IOException {
+    Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    Path directory = path.toAbsolutePath().getParent();
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      /* some platforms cannot open a directory; the move itself is atomic anyway */
+    }
+  }
+
+  /**
+   * Writes zeros until the size of the specified stream is a multiple of the
+   * specified number of bytes.
+   *
+   * @param out      the stream to write to
+   * @param numBytes the number of bytes to align to
+   * @throws IOException if writing fails
+   */
+  private static void align(DataOutputStream out, int numBytes) throws IOException {
+    while (out.size() % numBytes != 0) {
+      out.writeByte(0);
+    }
+  }
+
+  /**
+   * Returns the slot of the hash table of the words a word with the specified
+   * hash code is looked up at first.
+   *
+   * @param hash      the hash code of the word
+   * @param tableSize the number of slots, a power of two
+   * @return the first slot
+   */
+  private static int slotOf(int hash, int tableSize) {
+    return (hash ^ (hash >>> 16)) & (tableSize - 1);
+  }
+
+  /**
+   * Reads the specified file.
+   *
+   * Only the header and the footer are read; the postings lists, the lengths
+   * of the word count vectors, the numbers of words and the documents stay in
+   * the mapped file until they are used. The file may be replaced while it is
+   * in use, but it must not be modified in place.
+   *
+   * @param fileName the name of the file
+   * @return the contents of the file
+   * @throws IOException if the file could not be read or is not an index file
+   */
+  public static IndexFile read(String fileName) throws IOException {
+    ByteBuffer buffer;
+
+    try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("index file exceeds the limit of 2 GB: " + fileName);
+      }
+
+      /* the mapping stays valid after the channel has been closed */
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        throw new IOException("not an index file: " + fileName);
+      }
+
+      buffer.position(buffer.capacity() - FOOTER_BYTES);
+      return new IndexFile(buffer);
+    } catch (RuntimeException e) {
+      /* a truncated or corrupted file makes the buffer throw */
+      throw new IOException("corrupted index file: " + fileName, e);
+    }
+  }
+
+  /**
+   * Returns the postings list of the word with the specified id in the
+   * {@link TermDictionary}, cf. {@link InvertedIndex#getPostings(int)}.
+   *
+   * The list is read from the file the first time it is requested; afterwards,
+   * the same list is returned, so entries counted as removed stay counted.
+   *
+   * @param termId the id of the word in the {@link TermDictionary}
+   * @return the postings list or <code>null</code>, if no document of the file
+   *         contains the word
+   */
+  Postings getPostings(int termId) {
+    String term = TermDictionary.getInstance().getTerm(termId);
+    int fileTermId = term == null ? -1 : this.findTerm(term);
+
+    if (fileTermId == -1) {
+      return null;
+    }
+
+    Postings list = this.postings.get(fileTermId);
+    if (list != null) {
+      return list;
+    }
+
+    int position = this.postingsOffsets.get(fileTermId);
+    int size = this.buffer.getInt(position);
+    int maxCount = this.buffer.getInt(position + Integer.BYTES);
+    int numBytes = this.buffer.getInt(position + 2 * Integer.BYTES);
+    int numBlocks = (size + Postings.BLOCK_SIZE - 1) / Postings.BLOCK_SIZE;
+    int skipPosition = position + 3 * Integer.BYTES;
+
+    list = new Postings(this.arena, skipPosition + numBlocks * Postings.SKIP_BYTES, numBytes, skipPosition,
+        numBlocks, size, numBytes, maxCount);
+
+    /* concurrent readers must share the list another reader has set first */
+    if (!this.postings.compareAndSet(fileTermId, null, list)) {
+      list = this.postings.get(fileTermId);
+    }
+
+    return list;
+  }
+
+  /**
+   * Looks up the specified word in the hash table of the words.
+   *
+   * @param term the word
+   * @return the id of the word in the file or <code>-1</code>, if the file does
+   *         not contain the word
+   */
+  private int findTerm(String term) {
+    int tableSize = this.termTable.capacity() / 2;
+    int hash = term.hashCode();
+    byte[] bytes = null;
+
+    for (int slot = slotOf(hash, tableSize);; slot = (slot + 1) & (tableSize - 1)) {
+      int fileTermId = this.termTable.get(2 * slot + 1) - 1;
+
+      if (fileTermId == -1) {
+        return -1;
+      }
+
+      if (this.termTable.get(2 * slot) == hash) {
+        if (bytes == null) {
+          bytes = term.getBytes(StandardCharsets.UTF_8);
+        }
+
+        if (this.termEquals(fileTermId, bytes)) {
+          return fileTermId;
+        }
+      }
+    }
+  }
+
+  /**
+   * Determines, whether the word with the specified id in the file has the
+   * specified UTF-8 encoding.
+   *
+   * @param fileTermId the id of the word in the file
+   * @param bytes      the encoding
+   * @return <code>true</code>, if the word has the encoding
+   */
+  private boolean termEquals(int fileTermId, byte[] bytes) {
+    int position = this.termOffsets.get(fileTermId);
+
+    if (this.buffer.getInt(position) != bytes.length) {
+      return false;
+    }
+
+    for (int i = 0; i < bytes.length; i++) {
+      if (this.buffer.get(position + Integer.BYTES + i) != bytes[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the id in the {@link TermDictionary} of the word with the
+   * specified id in the file. The word is added to the {@link TermDictionary}
+   * the first time it is needed.
+   *
+   * @param fileTermId the id of the word in the file
+   * @return the id of the word in the {@link TermDictionary}
+   */
+  private int termIdOf(int fileTermId) {
+    int termId = this.termIds[fileTermId] - 1;
+
+    /* racing threads intern the same word and get the same id */
+    if (termId == -1) {
+      ByteBuffer buffer = this.buffer.duplicate();
+      buffer.position(this.termOffsets.get(fileTermId));
+      termId = TermDictionary.getInstance().intern(readString(buffer));
+      this.termIds[fileTermId] = termId + 1;
+    }
+
+    return termId;
+  }
+
+  /**
+   * Writes the metadata and the words and counts of the specified document.
+   *
+   * @param out         the stream to write to
+   * @param doc         the document
+   * @param fileTermIds the id in the file of every word, indexed by its id in
+   *                    the {@link TermDictionary}
+   * @throws IOException if writing fails
+   */
+  private static void writeDocument(DataOutputStream out, Document doc, int[] fileTermIds) throws IOException {
+    if (doc instanceof LinkedDocument) {
+      out.writeByte(KIND_LINKED_DOCUMENT);
+    } else {
+      out.writeByte(KIND_DOCUMENT);
+    }
+
+    writeString(out, doc.getTitle());
+    writeString(out, doc.getLanguage());
+    writeString(out, doc.getDescription());
+    writeDate(out, doc.getReleaseDate());
+
+    Author author = doc.getAuthor();
+    out.writeBoolean(author != null);
+    if (author != null) {
+      writeString(out, author.getFirstName());
+      writeString(out, author.getLastName());
+      writeDate(out, author.getBirthday());
+      writeString(out, author.getResidence());
+      writeString(out, author.getEmail());
+    }
+
+    if (doc instanceof LinkedDocument) {
+      writeString(out, ((LinkedDocument) doc).getiD());
+    }
+
+    WordCountsArray wca = doc.getWordCounts();
+    out.writeInt(wca.size());
+    for (int i = 0; i < wca.size(); i++) {
+      out.writeInt(fileTermIds[wca.getTermId(i)]);
+      out.writeInt(wca.getCount(i));
+    }
+  }
+
+  /**
+   * Creates the document at the specified position from the file, cf.
+   * {@link IndexFile#writeDocument(DataOutputStream, Document, int[])}.
+   *
+   * Every call creates a new document, so it is up to the caller to keep it,
+   * e.g. in its {@link DocumentCollectionCell}.
+   *
+   * @param position the position of the document
+   * @return the document
+   */
+  public Document readDocument(int position) {
+    ByteBuffer buffer = this.buffer.duplicate();
+    buffer.position(this.documentOffsets.get(position));
+
+    byte kind = buffer.get();
+    String title = readString(buffer);
+    String language = readString(buffer);
+    String description = readString(buffer);
+    Date releaseDate = readDate(buffer);
+
+    Author author = null;
+    if (buffer.get() != 0) {
+      String firstName = readString(buffer);
+      String lastName = readString(buffer);
+      Date birthday = readDate(buffer);
+      String residence = readString(buffer);
+      String email = readString(buffer);
+      author = new Author(firstName, lastName, birthday, residence, email);
+    }
+
+    Document doc;
+    if (kind == KIND_LINKED_DOCUMENT) {
+      doc = new LinkedDocument(title, language, description, releaseDate, author, readString(buffer));
+    } else {
+      doc = new Document(title, language, description, releaseDate, author);
+    }
+
+    /* the words are stored stemmed and already interned, so they are added by id */
+    WordCountsArray wca = doc.getWordCounts();
+    int numWords = buffer.getInt();
+    for (int i = 0; i < numWords; i++) {
+      int termId = this.termIdOf(buffer.getInt());
+      wca.addTerm(termId, buffer.getInt());
+    }
+
+    return doc;
+  }
+
+  /**
+   * Writes the entries of the postings lists of the specified word in the
+   * specified indexes belonging to the documents that are written, using their
+   * new ids.
+   *
+   * @param out     the stream to write to
+   * @param termId  the id of the word in the {@link TermDictionary}
+   * @param indexes the indexes, ordered by their base ids
+   * @param idMap   the new id of every document or <code>-1</code>, indexed by
+   *                the old id minus <code>firstId</code>
+   * @param firstId the lowest old id of a written document
+   * @return the number of written entries
+   * @throws IOException if writing fails
+   */
+  private static int writePostings(DataOutputStream out, int termId, InvertedIndex[] indexes, int[] idMap,
+      int firstId) throws IOException {
+    /* encode the written entries with their new ids */
+    Postings written = new Postings();
+    for (int j = 0; j < indexes.length; j++) {
+      Postings list = indexes[j].getPostings(termId);
+
+      if (list != null) {
+        PostingsIterator iterator = list.iterator();
+
+        /* the old ids are ascending, so are the new ones */
+        while (iterator.next()) {
+          if (isWritten(iterator.documentId(), idMap, firstId)) {
+            written.add(idMap[iterator.documentId() - firstId], iterator.count());
+          }
+        }
+      }
+    }
+
+    out.writeInt(written.size());
+    out.writeInt(written.getMaxCount());
+    out.writeInt(written.getNumBytes());
+
+    for (int i = 0; i < written.getNumBlocks(); i++) {
+      out.writeInt(written.getBlockBase(i));
+      out.writeInt(written.getBlockOffset(i));
+    }
+
+    byte[] bytes = new byte[written.getNumBytes()];
+    written.getBytes(bytes);
+    out.write(bytes);
+
+    /* keep the next list aligned */
+    align(out, Integer.BYTES);
+    return written.size();
+  }
+
+  /**
+   * Determines, whether the document with the specified old id is written.
+   *
+   * @param documentId the old id of the document
+   * @param idMap      the new id of every document or <code>-1</code>, indexed
+   *                   by the old id minus <code>firstId</code>
+   * @param firstId    the lowest old id of a written document
+   * @return <code>true</code>, if the document is written
+   */
+  private static boolean isWritten(int documentId, int[] idMap, int firstId) {
+    return documentId >= firstId && documentId - firstId < idMap.length && idMap[documentId - firstId] != -1;
+  }
+
+  /**
+   * Writes the specified date, which may be <code>null</code>.
+   *
+   * @param out  the stream to write to
+   * @param date the date
+   * @throws IOException if writing fails
+   */
+  private static void writeDate(DataOutputStream out, Date date) throws IOException {
+    out.writeBoolean(date != null);
+    if (date != null) {
+      out.writeInt(date.getDay());
+      out.writeInt(date.getMonth());
+      out.writeInt(date.getYear());
+    }
+  }
+
+  /**
+   * Reads a date written by {@link IndexFile#writeDate(DataOutputStream, Date)}.
+   *
+   * @param buffer the buffer to read from
+   * @return the date, may be <code>null</code>
+   */
+  private static Date readDate(ByteBuffer buffer) {
+    if (buffer.get() == 0) {
+      return null;
+    }
+
+    int day = buffer.getInt();
+    int month = buffer.getInt();
+    int year = buffer.getInt();
+    return new Date(day, month, year);
+  }
+
+  /**
+   * Writes the specified string as the length of its UTF-8 encoding followed
+   * by the encoding.
+   *
+   * @param out the stream to write to
+   * @param s   the string
+   * @throws IOException if writing fails
+   */
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a string written by
+   * {@link IndexFile#writeString(DataOutputStream, String)}.
+   *
+   * @param buffer the buffer to read from
+   * @return the string
+   */
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
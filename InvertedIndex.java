@@ -0,0 +1,528 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.function.IntPredicate;
+
+/**
+ * This class represents an inverted index over the {@link Document}s of a
+ * {@link DocumentCollection}.
+ *
+ * For every word, the index administers a {@link Postings} list of the ids of
+ * all {@link Document}s containing the word. The lists are stored in an array
+ * indexed by the id of the word in the {@link TermDictionary}, unless the
+ * index is read from an {@link IndexFile}, which looks them up in the mapped
+ * file. Additionally,
+ * the length of the word count vector of every indexed {@link Document} is
+ * stored, so that the similarity of a query and a {@link Document} can be
+ * calculated by only looking at the words they share.
+ *
+ * For the statistics used by {@link Scoring}, the index also maintains the
+ * number of words of every {@link Document}, the number of {@link Document}s
+ * and their total number of words, all counting only {@link Document}s that
+ * have not been removed.
+ *
+ * An index may be restricted to the document ids starting at a base id, e.g.
+ * if it is a {@link Segment} of the index of a collection.
+ *
+ * Optionally, the postings lists and the data of every {@link Document} are
+ * stored off-heap, so that the index of a very large collection does not
+ * burden the garbage collector.
+ *
+ * The index is maintained incrementally, i.e. {@link Document}s are added and
+ * removed one by one. Note, that the index uses the word counts of a
+ * {@link Document} at the time it is added.
+ *
+ * The index may be read by any number of threads while a single thread
+ * modifies it. Removing a {@link Document} does not delete its postings
+ * entries right away, since a concurrent reader may still need them; they are
+ * purged later by {@link InvertedIndex#compact(IntPredicate)}.
+ *
+ * @see Postings
+ * @see DocumentCollection
+ *
+ */
+public class InvertedIndex {
+  /**
+   * the postings lists of all indexed words, indexed by their id in the
+   * {@link TermDictionary}; <code>null</code> for words no indexed document
+   * contains
+   */
+  private volatile Postings[] postings;
+
+  /**
+   * the file whose postings lists this index uses or <code>null</code>, if
+   * the lists are kept in <code>postings</code>
+   */
+  private final IndexFile file;
+
+  /**
+   * the length of the word count vector of every indexed document, indexed by
+   * document id minus the base id
+   */
+  private volatile DoubleBuffer norms;
+
+  /**
+   * the number of words of every indexed document, i.e. the sum of its counts,
+   * indexed by document id minus the base id
+   */
+  private volatile IntBuffer lengths;
+
+  /**
+   * the number of indexed documents that have not been removed
+   */
+  private volatile int numDocuments;
+
+  /**
+   * the total number of words of all indexed documents that have not been
+   * removed
+   */
+  private volatile long totalLength;
+
+  /**
+   * the lowest document id this index may contain
+   */
+  private final int baseId;
+
+  /**
+   * <code>true</code>, if the postings lists and norms are stored off-heap
+   */
+  private final boolean offHeap;
+
+  /**
+   * the arena new postings lists are allocated from
+   */
+  private PostingsArena arena;
+
+  /**
+   * the number of entries in all postings lists
+   */
+  private int numEntries;
+
+  /**
+   * the number of entries in all postings lists belonging to removed documents
+   */
+  private int numRemovedEntries;
+
+  /**
+   * Constructs an empty index on the heap.
+   */
+  public InvertedIndex() {
+    this(false);
+  }
+
+  /**
+   * Constructs an empty index.
+   *
+   * @param offHeap <code>true</code>, if the postings lists and norms are to be
+   *                stored off-heap
+   */
+  public InvertedIndex(boolean offHeap) {
+    this(offHeap, 0);
+  }
+
+  /**
+   * Constructs an empty index for the document ids starting at the specified
+   * base id.
+   *
+   * @param offHeap <code>true</code>, if the postings lists and norms are to be
+   *                stored off-heap
+   * @param baseId  the lowest document id the index may contain
+   */
+  public InvertedIndex(boolean offHeap, int baseId) {
+    this.file = null;
+    this.offHeap = offHeap;
+    this.arena = new PostingsArena(offHeap);
+    this.baseId = Math.max(baseId, 0);
+    this.postings = new Postings[16];
+    this.norms = this.allocateNorms(16);
+    this.lengths = this.allocateLengths(16);
+    this.numDocuments = 0;
+    this.totalLength = 0;
+    this.numEntries = 0;
+    this.numRemovedEntries = 0;
+  }
+
+  /**
+   * Constructs an index of the documents of the specified {@link IndexFile},
+   * which uses the mapped file in place.
+   *
+   * The postings lists are looked up in the file as they are requested, and
+   * the buffers of the norms and lengths are read-only, so no documents may be
+   * added to this index; the entries of removed documents are only counted as
+   * removed, cf. {@link Segment#isMapped()}.
+   *
+   * @param file         the file containing the postings lists
+   * @param norms        the length of the word count vector of every document,
+   *                     indexed by document id minus the base id
+   * @param lengths      the number of words of every document, indexed by
+   *                     document id minus the base id
+   * @param numDocuments the number of documents
+   * @param totalLength  the total number of words of all documents
+   * @param numEntries   the number of entries in all postings lists
+   * @param baseId       the lowest document id the index may contain
+   */
+  InvertedIndex(IndexFile file, DoubleBuffer norms, IntBuffer lengths, int numDocuments, long totalLength,
+      int numEntries, int baseId) {
+    this.file = file;
+    this.offHeap = true;
+    this.arena = new PostingsArena(true);
+    this.baseId = baseId;
+    this.postings = new Postings[0];
+    this.norms = norms;
+    this.lengths = lengths;
+    this.numDocuments = numDocuments;
+    this.totalLength = totalLength;
+    this.numEntries = numEntries;
+    this.numRemovedEntries = 0;
+  }
+
+  /**
+   * Constructs a copy of the specified index, which shares its postings lists,
+   * norms and lengths, cf. {@link InvertedIndex#snapshot()}.
+   *
+   * @param index the index to copy
+   */
+  private InvertedIndex(InvertedIndex index) {
+    this.file = index.file;
+    this.offHeap = index.offHeap;
+    this.arena = index.arena;
+    this.baseId = index.baseId;
+    this.postings = index.postings.clone();
+    this.norms = index.norms;
+    this.lengths = index.lengths;
+    this.numDocuments = index.numDocuments;
+    this.totalLength = index.totalLength;
+    this.numEntries = index.numEntries;
+    this.numRemovedEntries = index.numRemovedEntries;
+  }
+
+  /**
+   * Allocates a buffer for the specified number of norms.
+   *
+   * @param capacity the number of norms
+   * @return the new buffer
+   */
+  private DoubleBuffer allocateNorms(int capacity) {
+    if (this.offHeap) {
+      return ByteBuffer.allocateDirect(capacity * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    return DoubleBuffer.allocate(capacity);
+  }
+
+  /**
+   * Allocates a buffer for the specified number of lengths.
+   *
+   * @param capacity the number of lengths
+   * @return the new buffer
+   */
+  private IntBuffer allocateLengths(int capacity) {
+    if (this.offHeap) {
+      return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    return IntBuffer.allocate(capacity);
+  }
+
+  /**
+   * Returns the lowest document id this index may contain.
+   *
+   * @return the base id
+   */
+  public int getBaseId() {
+    return this.baseId;
+  }
+
+  /**
+   * Determines, whether the postings lists and norms are stored off-heap.
+   *
+   * @return <code>true</code>, if the index is stored off-heap
+   */
+  public boolean isOffHeap() {
+    return this.offHeap;
+  }
+
+  /**
+   * Adds the words of the specified {@link WordCountsArray} to the index.
+   *
+   * The specified document id must be greater than every document id that has
+   * been added to this index before and at least the base id. Words with count
+   * <code>0</code> are not indexed.
+   *
+   * @param documentId the id of the document
+   * @param wca        the words and counts of the document
+   */
+  public void addDocument(int documentId, WordCountsArray wca) {
+    if (wca == null || documentId < this.baseId) {
+      return;
+    }
+
+    Postings[] postings = this.postings;
+    int length = 0;
+
+    for (int i = 0; i < wca.size(); i++) {
+      int count = wca.getCount(i);
+
+      if (count > 0) {
+        length += count;
+        int termId = wca.getTermId(i);
+
+        /* if we have reached the end of the array, increase the array size */
+        if (termId >= postings.length) {
+          Postings[] newPostings = new Postings[Math.max(termId + 1, postings.length * 2)];
+          System.arraycopy(postings, 0, newPostings, 0, postings.length);
+          postings = newPostings;
+        }
+
+        if (postings[termId] == null) {
+          postings[termId] = new Postings(this.arena);
+        }
+
+        postings[termId].add(documentId, count);
+        this.numEntries++;
+      }
+    }
+
+    /* publish the new lists */
+    this.postings = postings;
+
+    /* if we have reached the end of the buffers, increase their size */
+    int slot = documentId - this.baseId;
+    if (slot >= this.norms.capacity()) {
+      int capacity = Math.max(slot + 1, this.norms.capacity() * 2);
+      DoubleBuffer newNorms = this.allocateNorms(capacity);
+      IntBuffer newLengths = this.allocateLengths(capacity);
+      for (int i = 0; i < this.norms.capacity(); i++) {
+        newNorms.put(i, this.norms.get(i));
+        newLengths.put(i, this.lengths.get(i));
+      }
+      this.norms = newNorms;
+      this.lengths = newLengths;
+    }
+
+    this.norms.put(slot, wca.getNorm());
+    this.lengths.put(slot, length);
+    this.numDocuments = this.numDocuments + 1;
+    this.totalLength = this.totalLength + length;
+  }
+
+  /**
+   * Removes the words of the specified {@link WordCountsArray} from the index.
+   *
+   * The specified {@link WordCountsArray} must be the one that has been used to
+   * add the document. The postings entries of the document are only counted as
+   * removed and stay in the index until it is compacted.
+   *
+   * @param documentId the id of the document
+   * @param wca        the words and counts of the document
+   */
+  public void removeDocument(int documentId, WordCountsArray wca) {
+    if (wca == null || documentId < this.baseId || documentId - this.baseId >= this.norms.capacity()) {
+      return;
+    }
+
+    for (int i = 0; i < wca.size(); i++) {
+      Postings list = this.getPostings(wca.getTermId(i));
+
+      if (list != null && wca.getCount(i) > 0) {
+        list.markRemoved();
+        this.numRemovedEntries++;
+      }
+    }
+
+    this.numDocuments = this.numDocuments - 1;
+    this.totalLength = this.totalLength - this.lengths.get(documentId - this.baseId);
+  }
+
+  /**
+   * Returns the number of entries in all postings lists, including the ones
+   * belonging to removed documents.
+   *
+   * @return the number of entries in all postings lists
+   */
+  public int getNumEntries() {
+    return this.numEntries;
+  }
+
+  /**
+   * Returns the number of entries in all postings lists belonging to removed
+   * documents.
+   *
+   * @return the number of entries belonging to removed documents
+   */
+  public int getNumRemovedEntries() {
+    return this.numRemovedEntries;
+  }
+
+  /**
+   * Returns the number of bytes allocated for the postings lists of this index
+   * since it has been created or compacted, cf. {@link PostingsArena}.
+   *
+   * @return the number of allocated bytes
+   */
+  long getNumAllocatedBytes() {
+    return this.arena.getNumAllocatedBytes();
+  }
+
+  /**
+   * Returns the number of bytes given up by growing postings lists of this
+   * index, which are released by {@link InvertedIndex#compact(IntPredicate)}.
+   *
+   * @return the number of abandoned bytes
+   */
+  long getNumAbandonedBytes() {
+    return this.arena.getNumAbandonedBytes();
+  }
+
+  /**
+   * Purges the entries of removed documents from the postings lists.
+   *
+   * Every postings list is replaced by a compacted copy in a new
+   * {@link PostingsArena}, so readers still working on the old list are not
+   * disturbed, and the memory given up by growing lists is released together
+   * with the old arena. Words that do not occur anymore are forgotten.
+   *
+   * Only removed documents may be purged. The entries of removed documents
+   * that are not purged, e.g. since a reader may still need them, stay
+   * counted as removed.
+   *
+   * @param isPurged tells, whether the entries of the document with a given id
+   *                 are to be purged
+   */
+  public void compact(IntPredicate isPurged) {
+    Postings[] postings = this.postings;
+    PostingsArena arena = new PostingsArena(this.offHeap);
+    int numEntries = 0;
+    int numRemovedEntries = 0;
+
+    for (int termId = 0; termId < postings.length; termId++) {
+      if (postings[termId] != null) {
+        Postings compacted = postings[termId].compact(isPurged, arena);
+        numEntries += compacted.size();
+        numRemovedEntries += compacted.getNumRemoved();
+
+        if (compacted.size() == 0) {
+          postings[termId] = null;
+        } else {
+          postings[termId] = compacted;
+        }
+      }
+    }
+
+    /* publish the compacted lists */
+    this.postings = postings;
+    this.arena = arena;
+
+    this.numEntries = numEntries;
+    this.numRemovedEntries = numRemovedEntries;
+  }
+
+  /**
+   * Returns a copy of this index, whose postings lists are not replaced by
+   * subsequent compactions, so it keeps every entry the index contains now,
+   * e.g. while it is written to a file without holding a lock. Documents must
+   * not be added to this index anymore, since the copy shares its postings
+   * lists, norms and lengths.
+   *
+   * @return a copy of this index
+   */
+  public InvertedIndex snapshot() {
+    return new InvertedIndex(this);
+  }
+
+  /**
+   * Returns the {@link Postings} list of the word with the specified id or
+   * <code>null</code>, if no indexed document contains the word.
+   *
+   * The returned list may contain entries of removed documents.
+   *
+   * @param termId the id of the word in the {@link TermDictionary}
+   * @return the {@link Postings} list of the specified word
+   */
+  public Postings getPostings(int termId) {
+    if (this.file != null) {
+      return this.file.getPostings(termId);
+    }
+
+    Postings[] postings = this.postings;
+
+    if (termId < 0 || termId >= postings.length) {
+      return null;
+    }
+
+    return postings[termId];
+  }
+
+  /**
+   * Returns the number of words of the document with the specified id, i.e.
+   * the sum of its counts.
+   *
+   * @param documentId the id of the document
+   * @return the number of words or <code>0</code>, if the document has never
+   *         been indexed
+   */
+  public int getLength(int documentId) {
+    IntBuffer lengths = this.lengths;
+
+    if (documentId < this.baseId || documentId - this.baseId >= lengths.capacity()) {
+      return 0;
+    }
+
+    return lengths.get(documentId - this.baseId);
+  }
+
+  /**
+   * Returns the number of indexed documents that have not been removed.
+   *
+   * @return the number of documents
+   */
+  public int getNumDocuments() {
+    return this.numDocuments;
+  }
+
+  /**
+   * Returns the total number of words of all indexed documents that have not
+   * been removed.
+   *
+   * @return the total number of words
+   */
+  public long getTotalLength() {
+    return this.totalLength;
+  }
+
+  /**
+   * Returns the number of indexed documents containing the word with the
+   * specified id that have not been removed.
+   *
+   * @param termId the id of the word in the {@link TermDictionary}
+   * @return the document frequency of the word
+   */
+  public int getDocumentFrequency(int termId) {
+    Postings list = this.getPostings(termId);
+
+    if (list == null) {
+      return 0;
+    }
+
+    return list.size() - list.getNumRemoved();
+  }
+
+  /**
+   * Returns the length of the word count vector of the document with the
+   * specified id.
+   *
+   * @param documentId the id of the document
+   * @return the length of the word count vector or <code>0</code>, if the
+   *         document has never been indexed
+   */
+  public double getNorm(int documentId) {
+    DoubleBuffer norms = this.norms;
+
+    if (documentId < this.baseId || documentId - this.baseId >= norms.capacity()) {
+      return 0;
+    }
+
+    return norms.get(documentId - this.baseId);
+  }
+}
@@ -1,3 +1,4 @@
+import java.io.IOException;
 
 public class LinkedDocument extends Document {
     final private String iD;
@@ -8,6 +9,23 @@ public class LinkedDocument extends Document {
 	this.iD = iD;
     }
 
+    /**
+     * Creates a linked document with the given values and without any content,
+     * e.g. to restore it from an {@link IndexFile}.
+     * 
+     * @param title       the document's title
+     * @param language    the language the document is written in
+     * @param description a short description of the document
+     * @param releaseDate the release date of the document
+     * @param author      the author of the document
+     * @param iD          the id of the document
+     */
+    LinkedDocument(String title, String language, String description, Date releaseDate, Author author,
+	    String iD) {
+	super(title, language, description, releaseDate, author);
+	this.iD = iD;
+    }
+
     public String getiD() {
 	return iD;
     }
@@ -46,9 +64,25 @@ public class LinkedDocument extends Document {
 	findOutgoingIDs(a);
     }
 
+    /**
+     * Creates a linked document from the content of the specified file. The
+     * name of the file is used as title and id of the document. The content is
+     * read in chunks, so the file may be larger than the available memory.
+     * 
+     * @param fileName the name of the file
+     * @return the created document or <code>null</code>, if the file could not
+     *         be read
+     */
     public static LinkedDocument createLinkedDocumentFromFile(String fileName) {
-	return null;
+	LinkedDocument doc = new LinkedDocument(fileName, "", "", null, null, fileName);
+
+	try {
+	    doc.addContentFromFile(fileName);
+	} catch (IOException e) {
+	    return null;
+	}
 
+	return doc;
     }
 
 }
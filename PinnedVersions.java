@@ -0,0 +1,78 @@
+import java.util.TreeMap;
+
+/**
+ * This class keeps track of the versions of a {@link DocumentCollection} that
+ * running queries are working on.
+ *
+ * A query pins the version of the collection before it takes its snapshot and
+ * releases it when it has finished. Entries of a {@link Document} removed in a
+ * version not newer than the oldest pinned version are invisible to every
+ * running query, so they may be purged from the index, even while queries are
+ * running.
+ *
+ * Instances of this class are thread-safe.
+ *
+ * @see DocumentCollection#match(String, int, Scoring)
+ *
+ */
+public class PinnedVersions {
+  /**
+   * the number of queries working on every pinned version
+   */
+  private final TreeMap<Long, Integer> counts;
+
+  /**
+   * Constructs an instance without any pinned version.
+   */
+  public PinnedVersions() {
+    this.counts = new TreeMap<Long, Integer>();
+  }
+
+  /**
+   * Pins the specified version for another query.
+   *
+   * @param version the version
+   */
+  public synchronized void pin(long version) {
+    this.counts.merge(version, 1, Integer::sum);
+  }
+
+  /**
+   * Releases the specified version for a query that has pinned it before.
+   *
+   * @param version the version
+   * @return <code>true</code>, if the oldest pinned version has changed, i.e.
+   *         the specified version was the oldest one and no other query is
+   *         working on it anymore
+   */
+  public synchronized boolean release(long version) {
+    Integer count = this.counts.get(version);
+
+    if (count == null) {
+      return false;
+    }
+
+    if (count > 1) {
+      this.counts.put(version, count - 1);
+      return false;
+    }
+
+    this.counts.remove(version);
+    return this.counts.isEmpty() || this.counts.firstKey() > version;
+  }
+
+  /**
+   * Returns the oldest pinned version.
+   *
+   * @param current the current version of the collection
+   * @return the oldest pinned version or <code>current</code>, if no version
+   *         is pinned
+   */
+  public synchronized long oldest(long current) {
+    if (this.counts.isEmpty()) {
+      return current;
+    }
+
+    return Math.min(this.counts.firstKey(), current);
+  }
+}
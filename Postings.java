@@ -0,0 +1,474 @@
+import java.nio.ByteBuffer;
+import java.util.function.IntPredicate;
+
+/**
+ * Helper class for the postings lists of the {@link InvertedIndex}.
+ *
+ * A postings list administers, for a single word, the ids of all
+ * {@link Document}s containing this word together with the count of the word
+ * in the respective {@link Document}. The entries are kept in ascending order
+ * of their document ids.
+ *
+ * The entries are stored compressed: every entry is encoded as the difference
+ * of its document id to the previous one followed by its count, both as
+ * variable-length integers of seven bits per byte. Most entries therefore take
+ * two bytes instead of eight. The entries are grouped into blocks of
+ * {@link Postings#BLOCK_SIZE} entries; for every block, the document id
+ * preceding it and the position of its first byte are stored, so that a
+ * {@link PostingsIterator} can skip whole blocks without decoding them.
+ *
+ * The encoded entries and the skip data of the blocks are stored in two
+ * regions of a {@link PostingsArena}, which is shared by all lists of an index
+ * and either kept on the heap or off-heap. A list does not own any buffer, so
+ * even millions of lists only take a few objects of the garbage collector.
+ *
+ * Entries are only ever appended by a single writing thread, while any number
+ * of threads may read concurrently: an entry is written before the size is
+ * increased, and grown regions are published before the size, so every reader
+ * sees at least the entries counted by the size it has read. Removing a
+ * {@link Document} only counts its entry as removed; the entries are purged by
+ * creating a compacted copy, so readers of the old list are not disturbed.
+ *
+ * Every list also knows the highest count of its entries, which bounds the
+ * score any {@link Document} can get for the word, cf.
+ * {@link Scoring#maxScore(double, int, double)}.
+ *
+ * @see InvertedIndex
+ * @see PostingsIterator
+ *
+ */
+public class Postings {
+  /**
+   * the number of entries per block
+   */
+  static final int BLOCK_SIZE = 128;
+
+  /**
+   * the number of bytes of the skip data of a block: the document id
+   * preceding the block and the position of its first byte
+   */
+  static final int SKIP_BYTES = 2 * Integer.BYTES;
+
+  /**
+   * the maximum number of bytes of an encoded entry
+   */
+  private static final int MAX_ENTRY_BYTES = 10;
+
+  /**
+   * the arena the regions of this list are allocated from
+   */
+  private final PostingsArena arena;
+
+  /**
+   * the address of the region of the encoded entries
+   */
+  private volatile long bytesAddress;
+
+  /**
+   * the address of the region of the skip data of the blocks, i.e. the
+   * document id preceding the first entry of every block, <code>-1</code> for
+   * the first block, followed by the position of its first byte
+   */
+  private volatile long skipAddress;
+
+  /**
+   * the number of bytes of the region of the encoded entries; only used by
+   * the writing thread
+   */
+  private int bytesCapacity;
+
+  /**
+   * the number of blocks the region of the skip data has room for; only used
+   * by the writing thread
+   */
+  private int skipCapacity;
+
+  /**
+   * the actual number of entries
+   */
+  private volatile int size;
+
+  /**
+   * the number of bytes used by the encoded entries; only used by the writing
+   * thread
+   */
+  private int numBytes;
+
+  /**
+   * the document id of the last entry or <code>-1</code>, if it has not been
+   * decoded yet; only used by the writing thread
+   */
+  private int lastDocumentId;
+
+  /**
+   * the highest count of all entries, including the ones of removed documents
+   */
+  private volatile int maxCount;
+
+  /**
+   * the number of entries belonging to removed documents
+   */
+  private int numRemoved;
+
+  /**
+   * Constructs an empty postings list on the heap, which has an arena of its
+   * own.
+   */
+  public Postings() {
+    this(new PostingsArena(false));
+  }
+
+  /**
+   * Constructs an empty postings list. No memory is allocated before the first
+   * entry is added.
+   *
+   * @param arena the arena the regions of the list are allocated from
+   */
+  public Postings(PostingsArena arena) {
+    this(arena, 0, 0, 0, 0, 0, 0, 0);
+  }
+
+  /**
+   * Constructs a postings list consisting of the first <code>size</code>
+   * encoded entries of the specified regions.
+   *
+   * The regions are used in place. If they are full, they are copied as soon
+   * as an entry is added, so they may be read-only.
+   *
+   * @param arena         the arena containing the regions
+   * @param bytesAddress  the address of the encoded entries
+   * @param bytesCapacity the number of bytes of the region of the encoded
+   *                      entries
+   * @param skipAddress   the address of the skip data of the blocks
+   * @param skipCapacity  the number of blocks the region of the skip data has
+   *                      room for
+   * @param size          the number of entries
+   * @param numBytes      the number of bytes used by the encoded entries
+   * @param maxCount      the highest count of the entries
+   */
+  Postings(PostingsArena arena, long bytesAddress, int bytesCapacity, long skipAddress, int skipCapacity, int size,
+      int numBytes, int maxCount) {
+    this.arena = arena;
+    this.bytesAddress = bytesAddress;
+    this.bytesCapacity = bytesCapacity;
+    this.skipAddress = skipAddress;
+    this.skipCapacity = skipCapacity;
+    this.size = size;
+    this.numBytes = numBytes;
+    this.lastDocumentId = -1;
+    this.maxCount = maxCount;
+    this.numRemoved = 0;
+  }
+
+  /**
+   * Allocates a region of the specified number of bytes in the arena and
+   * copies the first <code>length</code> bytes of the specified region into it.
+   * The specified region is counted as given up.
+   *
+   * @param address     the address of the region to copy
+   * @param length      the number of bytes to copy
+   * @param oldCapacity the number of bytes of the region to copy
+   * @param capacity    the number of bytes of the new region
+   * @return the address of the new region
+   */
+  private long copyOf(long address, int length, int oldCapacity, int capacity) {
+    long newAddress = this.arena.allocate(capacity);
+
+    if (length > 0) {
+      this.arena.slab(newAddress).put(PostingsArena.offset(newAddress), this.arena.slab(address),
+          PostingsArena.offset(address), length);
+    }
+
+    this.arena.abandon(oldCapacity);
+    return newAddress;
+  }
+
+  /**
+   * Determines, whether the entries of this postings list are stored off-heap.
+   *
+   * @return <code>true</code>, if the entries are stored off-heap
+   */
+  public boolean isOffHeap() {
+    return this.arena.isOffHeap();
+  }
+
+  /**
+   * Adds an entry for the specified document id with the specified count.
+   *
+   * The specified document id must be greater than every document id already
+   * contained in this postings list. Otherwise, nothing will happen.
+   *
+   * @param documentId the id of the document
+   * @param count      the count of the word in the document
+   */
+  public void add(int documentId, int count) {
+    if (this.size > 0 && this.getLastDocumentId() >= documentId) {
+      return;
+    }
+
+    int previousId = this.size > 0 ? this.lastDocumentId : -1;
+
+    /* every block starts with its skip data */
+    if (this.size % BLOCK_SIZE == 0) {
+      int block = this.size / BLOCK_SIZE;
+
+      if (block == this.skipCapacity) {
+        int capacity = Math.max(this.skipCapacity * 2, 1);
+        this.skipAddress = this.copyOf(this.skipAddress, block * SKIP_BYTES, this.skipCapacity * SKIP_BYTES,
+            capacity * SKIP_BYTES);
+        this.skipCapacity = capacity;
+      }
+
+      ByteBuffer skip = this.arena.slab(this.skipAddress);
+      int offset = PostingsArena.offset(this.skipAddress) + block * SKIP_BYTES;
+      skip.putInt(offset, previousId);
+      skip.putInt(offset + Integer.BYTES, this.numBytes);
+    }
+
+    /* if the entry may not fit into the region, increase its size */
+    if (this.numBytes + MAX_ENTRY_BYTES > this.bytesCapacity) {
+      int capacity = Math.max(this.bytesCapacity * 2, this.numBytes + MAX_ENTRY_BYTES);
+      this.bytesAddress = this.copyOf(this.bytesAddress, this.numBytes, this.bytesCapacity, capacity);
+      this.bytesCapacity = capacity;
+    }
+
+    /* write the entry and its bound first, then publish it */
+    ByteBuffer bytes = this.arena.slab(this.bytesAddress);
+    int offset = PostingsArena.offset(this.bytesAddress);
+    this.numBytes = writeVarInt(bytes, offset + this.numBytes, documentId - previousId) - offset;
+    this.numBytes = writeVarInt(bytes, offset + this.numBytes, count) - offset;
+    this.lastDocumentId = documentId;
+    if (count > this.maxCount) {
+      this.maxCount = count;
+    }
+    this.size = this.size + 1;
+  }
+
+  /**
+   * Returns the document id of the last entry, decoding it, if this list has
+   * been read from a file.
+   *
+   * @return the document id of the last entry
+   */
+  private int getLastDocumentId() {
+    if (this.lastDocumentId == -1) {
+      /* only the last block has to be decoded */
+      PostingsIterator iterator = this.iterator();
+      iterator.advance(this.getBlockBase((this.size - 1) / BLOCK_SIZE) + 1);
+
+      int documentId = iterator.documentId();
+      while (iterator.next()) {
+        documentId = iterator.documentId();
+      }
+
+      this.lastDocumentId = documentId;
+    }
+
+    return this.lastDocumentId;
+  }
+
+  /**
+   * Writes the specified non-negative value as variable-length integer, seven
+   * bits per byte, the lowest bits first. The highest bit of every byte tells,
+   * whether another byte follows.
+   *
+   * @param buffer   the buffer to write to
+   * @param position the position of the first byte
+   * @param value    the value
+   * @return the position after the last written byte
+   */
+  private static int writeVarInt(ByteBuffer buffer, int position, int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer.put(position++, (byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+
+    buffer.put(position++, (byte) value);
+    return position;
+  }
+
+  /**
+   * Counts one entry of this postings list as belonging to a removed document.
+   *
+   * The entry itself stays in the list until the list is compacted using
+   * {@link Postings#compact(IntPredicate, PostingsArena)}.
+   */
+  public void markRemoved() {
+    this.numRemoved++;
+  }
+
+  /**
+   * Returns the number of entries belonging to removed documents.
+   *
+   * @return the number of entries belonging to removed documents
+   */
+  public int getNumRemoved() {
+    return this.numRemoved;
+  }
+
+  /**
+   * Returns a compacted copy of this postings list without the entries of the
+   * purged documents, allocated from the specified arena. This postings list
+   * is left unchanged.
+   *
+   * Only documents whose entries are counted as removed may be purged; the
+   * entries of removed documents that are not purged stay counted as removed
+   * in the copy. Either way, the regions of the copy leave no room for further
+   * entries: if there are no entries of removed documents, the regions are
+   * copied as they are, otherwise the remaining entries are collected in a
+   * scratch list first.
+   *
+   * @param isPurged tells, whether the entry of the document with a given id
+   *                 is to be purged
+   * @param arena    the arena the copy is allocated from
+   * @return a compacted copy of this postings list
+   */
+  public Postings compact(IntPredicate isPurged, PostingsArena arena) {
+    if (this.numRemoved == 0) {
+      Postings compacted = new Postings(arena);
+      int numBlocks = this.getNumBlocks();
+      int numBytes = this.numBytes;
+
+      compacted.skipAddress = arena.allocate(numBlocks * SKIP_BYTES);
+      compacted.skipCapacity = numBlocks;
+      compacted.bytesAddress = arena.allocate(numBytes);
+      compacted.bytesCapacity = numBytes;
+      arena.slab(compacted.skipAddress).put(PostingsArena.offset(compacted.skipAddress),
+          this.arena.slab(this.skipAddress), PostingsArena.offset(this.skipAddress), numBlocks * SKIP_BYTES);
+      arena.slab(compacted.bytesAddress).put(PostingsArena.offset(compacted.bytesAddress),
+          this.arena.slab(this.bytesAddress), PostingsArena.offset(this.bytesAddress), numBytes);
+      compacted.numBytes = numBytes;
+      compacted.lastDocumentId = this.lastDocumentId;
+      compacted.maxCount = this.maxCount;
+      compacted.size = this.size;
+      return compacted;
+    }
+
+    /* the scratch list grows by doubling, the copy of it does not */
+    Postings scratch = new Postings(new PostingsArena(false));
+    PostingsIterator iterator = this.iterator();
+
+    while (iterator.next()) {
+      if (!isPurged.test(iterator.documentId())) {
+        scratch.add(iterator.documentId(), iterator.count());
+      }
+    }
+
+    if (scratch.size == 0) {
+      return new Postings(arena);
+    }
+
+    Postings compacted = scratch.compact(isPurged, arena);
+    compacted.numRemoved = this.numRemoved - (this.size - compacted.size);
+    return compacted;
+  }
+
+  /**
+   * Returns a view of the entries currently contained in this postings list.
+   *
+   * The view never changes, even if entries are added to this postings list
+   * afterwards.
+   *
+   * @return a view of the current entries
+   */
+  public Postings snapshot() {
+    /* read the size first, the regions and the bound cover at least this many entries */
+    int size = this.size;
+    return new Postings(this.arena, this.bytesAddress, 0, this.skipAddress, 0, size, 0, this.maxCount);
+  }
+
+  /**
+   * Returns an iterator over the entries of this postings list, which decodes
+   * them one by one.
+   *
+   * The iterator only returns the entries contained in this postings list when
+   * this method is called.
+   *
+   * @return an iterator positioned before the first entry
+   */
+  public PostingsIterator iterator() {
+    /* read the size first, the regions contain at least this many entries */
+    int size = this.size;
+    long bytesAddress = this.bytesAddress;
+    long skipAddress = this.skipAddress;
+
+    if (size == 0) {
+      return new PostingsIterator(null, 0, null, 0, 0);
+    }
+
+    return new PostingsIterator(this.arena.slab(bytesAddress), PostingsArena.offset(bytesAddress),
+        this.arena.slab(skipAddress), PostingsArena.offset(skipAddress), size);
+  }
+
+  /**
+   * Returns the highest count of all entries of this postings list, including
+   * the ones belonging to removed documents.
+   *
+   * @return the highest count or <code>0</code>, if the list is empty
+   */
+  public int getMaxCount() {
+    return this.maxCount;
+  }
+
+  /**
+   * Returns the number of entries in this postings list.
+   *
+   * @return the number of entries in this postings list
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Returns the number of blocks of this postings list.
+   *
+   * @return the number of blocks
+   */
+  int getNumBlocks() {
+    return (this.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+  }
+
+  /**
+   * Returns the number of bytes used by the encoded entries. Only the writing
+   * thread may call this method.
+   *
+   * @return the number of bytes
+   */
+  int getNumBytes() {
+    return this.numBytes;
+  }
+
+  /**
+   * Returns the document id preceding the specified block.
+   *
+   * @param block the number of the block
+   * @return the document id preceding the block
+   */
+  int getBlockBase(int block) {
+    long address = this.skipAddress;
+    return this.arena.slab(address).getInt(PostingsArena.offset(address) + block * SKIP_BYTES);
+  }
+
+  /**
+   * Returns the position of the first byte of the specified block.
+   *
+   * @param block the number of the block
+   * @return the position of the block
+   */
+  int getBlockOffset(int block) {
+    long address = this.skipAddress;
+    return this.arena.slab(address).getInt(PostingsArena.offset(address) + block * SKIP_BYTES + Integer.BYTES);
+  }
+
+  /**
+   * Copies the encoded entries into the specified array. Only the writing
+   * thread may call this method.
+   *
+   * @param bytes the array, which must have room for
+   *              {@link Postings#getNumBytes()} bytes
+   */
+  void getBytes(byte[] bytes) {
+    long address = this.bytesAddress;
+    this.arena.slab(address).get(PostingsArena.offset(address), bytes, 0, this.numBytes);
+  }
+}
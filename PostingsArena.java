@@ -0,0 +1,191 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class provides the memory for the {@link Postings} lists of an
+ * {@link InvertedIndex}.
+ *
+ * Instead of a buffer of its own, every list gets regions of a few large
+ * buffers, the slabs, shared by all lists of the arena. A region is addressed
+ * by a single <code>long</code> holding the number of its slab in the upper
+ * and its offset in the lower half, so a list only keeps addresses and the
+ * number of buffer objects does not grow with the number of words. Slabs are
+ * either backed by arrays on the heap or allocated off-heap as direct buffers;
+ * in the latter case, a few large direct buffers keep the entries out of the
+ * reach of the garbage collector.
+ *
+ * Regions are handed out one after another and never reused, so a region that
+ * has been given up by a growing list stays valid for concurrent readers. The
+ * memory of such regions is only released together with the whole arena,
+ * i.e. when the index is compacted or replaced. The arena counts the bytes of
+ * the regions given up, so that the index can be compacted as soon as they
+ * make up a considerable part of the arena, cf.
+ * {@link PostingsArena#getNumAbandonedBytes()}.
+ *
+ * Regions are only allocated by a single writing thread, while any number of
+ * threads may read the slabs concurrently: a new slab is published before any
+ * address of a region within it.
+ *
+ * @see Postings
+ *
+ */
+public class PostingsArena {
+  /**
+   * the capacity of the first slab
+   */
+  private static final int MIN_SLAB_SIZE = 256;
+
+  /**
+   * the maximum capacity of a slab, unless a single region is larger
+   */
+  private static final int MAX_SLAB_SIZE = 1 << 20;
+
+  /**
+   * <code>true</code>, if the slabs are allocated off-heap
+   */
+  private final boolean offHeap;
+
+  /**
+   * all slabs, the one regions are currently allocated from last
+   */
+  private volatile ByteBuffer[] slabs;
+
+  /**
+   * the number of bytes already allocated from the last slab; only used by the
+   * writing thread
+   */
+  private int position;
+
+  /**
+   * the number of bytes of all regions allocated so far
+   */
+  private long numAllocatedBytes;
+
+  /**
+   * the number of bytes of all regions given up so far
+   */
+  private long numAbandonedBytes;
+
+  /**
+   * Constructs an empty arena.
+   *
+   * @param offHeap <code>true</code>, if the slabs are to be allocated off-heap
+   */
+  public PostingsArena(boolean offHeap) {
+    this.offHeap = offHeap;
+    this.slabs = new ByteBuffer[0];
+    this.position = 0;
+    this.numAllocatedBytes = 0;
+    this.numAbandonedBytes = 0;
+  }
+
+  /**
+   * Constructs an off-heap arena whose first slab is the specified buffer,
+   * e.g. a mapped {@link IndexFile}. Regions of the buffer are addressed by
+   * their position in it; new regions are never allocated from it, so it may
+   * be read-only.
+   *
+   * @param buffer the first slab
+   */
+  PostingsArena(ByteBuffer buffer) {
+    this.offHeap = true;
+    this.slabs = new ByteBuffer[] { buffer };
+    this.position = buffer.capacity();
+    this.numAllocatedBytes = 0;
+    this.numAbandonedBytes = 0;
+  }
+
+  /**
+   * Determines, whether the slabs of this arena are allocated off-heap.
+   *
+   * @return <code>true</code>, if the slabs are allocated off-heap
+   */
+  public boolean isOffHeap() {
+    return this.offHeap;
+  }
+
+  /**
+   * Allocates a region of the specified number of bytes. Only the writing
+   * thread may call this method.
+   *
+   * @param numBytes the number of bytes
+   * @return the address of the region
+   */
+  long allocate(int numBytes) {
+    ByteBuffer[] slabs = this.slabs;
+    ByteBuffer last = slabs.length == 0 ? null : slabs[slabs.length - 1];
+
+    if (last == null || numBytes > last.capacity() - this.position) {
+      /* every slab is twice as large as the one before, but not too large */
+      int capacity = last == null ? MIN_SLAB_SIZE : Math.min(last.capacity() * 2, MAX_SLAB_SIZE);
+      capacity = Math.max(capacity, numBytes);
+
+      if (this.offHeap) {
+        last = ByteBuffer.allocateDirect(capacity);
+      } else {
+        last = ByteBuffer.allocate(capacity);
+      }
+
+      /* publish the slab before any address within it */
+      slabs = Arrays.copyOf(slabs, slabs.length + 1);
+      slabs[slabs.length - 1] = last;
+      this.slabs = slabs;
+      this.position = 0;
+    }
+
+    long address = ((long) (slabs.length - 1) << 32) | this.position;
+    this.position += numBytes;
+    this.numAllocatedBytes += numBytes;
+    return address;
+  }
+
+  /**
+   * Counts a region of the specified number of bytes as given up, e.g. after a
+   * growing list has been copied to a larger region. Only the writing thread
+   * may call this method.
+   *
+   * @param numBytes the number of bytes of the region
+   */
+  void abandon(int numBytes) {
+    this.numAbandonedBytes += numBytes;
+  }
+
+  /**
+   * Returns the number of bytes of all regions allocated from this arena.
+   *
+   * @return the number of allocated bytes
+   */
+  long getNumAllocatedBytes() {
+    return this.numAllocatedBytes;
+  }
+
+  /**
+   * Returns the number of bytes of all regions given up, which are only
+   * released together with the whole arena.
+   *
+   * @return the number of abandoned bytes
+   */
+  long getNumAbandonedBytes() {
+    return this.numAbandonedBytes;
+  }
+
+  /**
+   * Returns the slab containing the region with the specified address.
+   *
+   * @param address the address of the region
+   * @return the slab
+   */
+  ByteBuffer slab(long address) {
+    return this.slabs[(int) (address >>> 32)];
+  }
+
+  /**
+   * Returns the offset of the region with the specified address in its slab.
+   *
+   * @param address the address of the region
+   * @return the offset
+   */
+  static int offset(long address) {
+    return (int) address;
+  }
+}
@@ -0,0 +1,198 @@
+import java.nio.ByteBuffer;
+
+/**
+ * This class iterates over the entries of a {@link Postings} list in
+ * ascending order of their document ids, decoding them one by one.
+ *
+ * An iterator starts before the first entry. It is moved to the next entry by
+ * {@link PostingsIterator#next()} or to the first entry with a document id not
+ * lower than a given one by {@link PostingsIterator#advance(int)}, which skips
+ * whole blocks of entries without decoding them. The entry the iterator is
+ * positioned at is available through {@link PostingsIterator#documentId()} and
+ * {@link PostingsIterator#count()}; once the entries are exhausted, the
+ * document id is {@link PostingsIterator#NO_MORE_DOCUMENTS}.
+ *
+ * Instances of this class are not thread-safe, but any number of iterators may
+ * work on the same list concurrently.
+ *
+ * @see Postings#iterator()
+ *
+ */
+public class PostingsIterator {
+  /**
+   * the document id of an iterator whose entries are exhausted, which is
+   * greater than every valid document id
+   */
+  public static final int NO_MORE_DOCUMENTS = Integer.MAX_VALUE;
+
+  /**
+   * the buffer containing the encoded entries
+   */
+  private final ByteBuffer bytes;
+
+  /**
+   * the position of the first encoded entry in <code>bytes</code>
+   */
+  private final int bytesOffset;
+
+  /**
+   * the buffer containing the skip data of every block
+   */
+  private final ByteBuffer skip;
+
+  /**
+   * the position of the skip data of the first block in <code>skip</code>
+   */
+  private final int skipOffset;
+
+  /**
+   * the number of entries
+   */
+  private final int size;
+
+  /**
+   * the number of entries decoded so far
+   */
+  private int index;
+
+  /**
+   * the position of the next byte to decode
+   */
+  private int position;
+
+  /**
+   * the document id of the current entry
+   */
+  private int documentId;
+
+  /**
+   * the count of the current entry
+   */
+  private int count;
+
+  /**
+   * Constructs an iterator over the first <code>size</code> encoded entries of
+   * the specified buffers.
+   *
+   * @param bytes       the buffer containing the encoded entries
+   * @param bytesOffset the position of the first encoded entry
+   * @param skip        the buffer containing the skip data of every block,
+   *                    i.e. the document id preceding the block followed by
+   *                    the position of its first byte
+   * @param skipOffset  the position of the skip data of the first block
+   * @param size        the number of entries
+   */
+  PostingsIterator(ByteBuffer bytes, int bytesOffset, ByteBuffer skip, int skipOffset, int size) {
+    this.bytes = bytes;
+    this.bytesOffset = bytesOffset;
+    this.skip = skip;
+    this.skipOffset = skipOffset;
+    this.size = size;
+    this.index = 0;
+    this.position = 0;
+    this.documentId = -1;
+    this.count = 0;
+  }
+
+  /**
+   * Moves this iterator to the next entry.
+   *
+   * @return <code>true</code>, if there is another entry
+   */
+  public boolean next() {
+    if (this.index >= this.size) {
+      this.documentId = NO_MORE_DOCUMENTS;
+      this.count = 0;
+      return false;
+    }
+
+    this.documentId += this.readVarInt();
+    this.count = this.readVarInt();
+    this.index++;
+    return true;
+  }
+
+  /**
+   * Moves this iterator to the first entry with a document id not lower than
+   * the specified one. If the current entry already qualifies, the iterator
+   * stays there; it never moves backwards.
+   *
+   * @param target the lowest document id to stop at
+   * @return <code>true</code>, if there is such an entry
+   */
+  public boolean advance(int target) {
+    if (this.documentId >= target) {
+      return this.documentId != NO_MORE_DOCUMENTS;
+    }
+
+    /* skip to the last block starting below the target, if it lies ahead */
+    int numBlocks = (this.size + Postings.BLOCK_SIZE - 1) / Postings.BLOCK_SIZE;
+    int low = this.index / Postings.BLOCK_SIZE + 1;
+    int high = numBlocks - 1;
+    int block = -1;
+
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+
+      if (this.skip.getInt(this.skipOffset + mid * Postings.SKIP_BYTES) < target) {
+        block = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    if (block != -1) {
+      this.index = block * Postings.BLOCK_SIZE;
+      this.position = this.skip.getInt(this.skipOffset + block * Postings.SKIP_BYTES + Integer.BYTES);
+      this.documentId = this.skip.getInt(this.skipOffset + block * Postings.SKIP_BYTES);
+    }
+
+    /* decode the entries of the block up to the target */
+    while (this.next()) {
+      if (this.documentId >= target) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns the document id of the current entry.
+   *
+   * @return the document id, <code>-1</code> before the first entry or
+   *         {@link PostingsIterator#NO_MORE_DOCUMENTS} after the last entry
+   */
+  public int documentId() {
+    return this.documentId;
+  }
+
+  /**
+   * Returns the count of the current entry.
+   *
+   * @return the count of the word in the document of the current entry
+   */
+  public int count() {
+    return this.count;
+  }
+
+  /**
+   * Reads a variable-length integer and moves on behind it.
+   *
+   * @return the value
+   */
+  private int readVarInt() {
+    int value = 0;
+    int shift = 0;
+    byte b;
+
+    do {
+      b = this.bytes.get(this.bytesOffset + this.position++);
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+
+    return value;
+  }
+}
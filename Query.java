@@ -0,0 +1,75 @@
+/**
+ * This class represents a query split into its word stems, cf.
+ * {@link Document#parseQuery(String)}.
+ *
+ * The {@link WordCountsArray} of a query only administers the word stems
+ * already contained in the {@link TermDictionary}, since no other word can
+ * match any {@link Document}, and a query must not add words to the
+ * dictionary. The dropped words still count for the length of the query
+ * vector, so the similarity of a {@link Document} does not depend on which
+ * words happen to be contained in the dictionary.
+ *
+ * @see DocumentCollection#match(String, int, Scoring)
+ *
+ */
+public class Query {
+  /**
+   * the word stems of the query contained in the {@link TermDictionary} and
+   * their counts
+   */
+  private final WordCountsArray wordCounts;
+
+  /**
+   * the sum of the squared counts of all word stems of the query, including
+   * the dropped ones
+   */
+  private final long squaredNorm;
+
+  /**
+   * Constructs a new query.
+   *
+   * @param wordCounts         the word stems of the query contained in the
+   *                           {@link TermDictionary} and their counts
+   * @param unknownSquaredNorm the sum of the squared counts of the word stems
+   *                           not contained in the {@link TermDictionary}
+   */
+  public Query(WordCountsArray wordCounts, long unknownSquaredNorm) {
+    long squaredNorm = unknownSquaredNorm;
+    for (int i = 0; i < wordCounts.size(); i++) {
+      squaredNorm += (long) wordCounts.getCount(i) * wordCounts.getCount(i);
+    }
+
+    this.wordCounts = wordCounts;
+    this.squaredNorm = squaredNorm;
+  }
+
+  /**
+   * Returns the word stems of this query contained in the
+   * {@link TermDictionary} and their counts.
+   *
+   * @return the word stems and their counts
+   */
+  public WordCountsArray getWordCounts() {
+    return this.wordCounts;
+  }
+
+  /**
+   * Returns the sum of the squared counts of all word stems of this query,
+   * including the ones not contained in the {@link TermDictionary}.
+   *
+   * @return the squared length of the query vector
+   */
+  public long getSquaredNorm() {
+    return this.squaredNorm;
+  }
+
+  /**
+   * Returns the length of the vector of word counts of this query, including
+   * the word stems not contained in the {@link TermDictionary}.
+   *
+   * @return the length of the query vector
+   */
+  public double getNorm() {
+    return Math.sqrt(this.squaredNorm);
+  }
+}
@@ -0,0 +1,184 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class caches the {@link QueryResult}s of the most recent queries on a
+ * {@link DocumentCollection}.
+ *
+ * A query is identified by its normalized form, i.e. the ids and counts of its
+ * stemmed words regardless of their order and the length of its vector,
+ * together with the maximum number of {@link Document}s and the
+ * {@link Scoring}. At most a fixed number of
+ * results is kept; if another result is added, the least recently used one is
+ * evicted.
+ *
+ * Every result belongs to the version of the collection the query worked on.
+ * A result is only returned for the same version, and all results are
+ * dropped as soon as a newer version is seen, so a modification of the
+ * collection invalidates the whole cache.
+ *
+ * Instances of this class are thread-safe.
+ *
+ * @see DocumentCollection#match(String, int, Scoring)
+ *
+ */
+public class QueryCache {
+  /**
+   * the cached results, the least recently used first
+   */
+  private final LinkedHashMap<String, QueryResult> results;
+
+  /**
+   * the maximum number of cached results
+   */
+  private volatile int capacity;
+
+  /**
+   * the version of the collection all cached results belong to
+   */
+  private long version;
+
+  /**
+   * Constructs an empty cache.
+   *
+   * If the specified capacity is not greater than <code>0</code>, no results
+   * will be cached at all.
+   *
+   * @param capacity the maximum number of cached results
+   */
+  public QueryCache(int capacity) {
+    this.results = new LinkedHashMap<String, QueryResult>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, QueryResult> eldest) {
+        return this.size() > QueryCache.this.capacity;
+      }
+    };
+    this.capacity = Math.max(capacity, 0);
+    this.version = 0;
+  }
+
+  /**
+   * Builds the key identifying a query.
+   *
+   * @param query   the query
+   * @param k       the maximum number of {@link Document}s in the result
+   * @param scoring the way the similarity is calculated
+   * @return the key of the query
+   */
+  public static String key(Query query, int k, Scoring scoring) {
+    WordCountsArray wordCounts = query.getWordCounts();
+
+    /* the order of the words does not matter, so they are sorted by their id */
+    long[] words = new long[wordCounts.size()];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = ((long) wordCounts.getTermId(i) << 32) | (wordCounts.getCount(i) & 0xFFFFFFFFL);
+    }
+    Arrays.sort(words);
+
+    /* words not contained in the dictionary only change the length */
+    StringBuilder key = new StringBuilder();
+    key.append(scoring.name()).append(' ').append(k).append(' ').append(query.getSquaredNorm());
+    for (int i = 0; i < words.length; i++) {
+      key.append(' ').append(words[i] >>> 32).append(':').append((int) words[i]);
+    }
+
+    return key.toString();
+  }
+
+  /**
+   * Returns the cached result of the query with the specified key.
+   *
+   * @param key     the key of the query
+   * @param version the current version of the collection
+   * @return the cached result or <code>null</code>, if there is no result of
+   *         the query for the specified version
+   */
+  public synchronized QueryResult get(String key, long version) {
+    this.advance(version);
+
+    if (version != this.version) {
+      return null;
+    }
+
+    return this.results.get(key);
+  }
+
+  /**
+   * Caches the specified result of the query with the specified key.
+   *
+   * The result is only cached, if it belongs to the latest version of the
+   * collection seen by this cache.
+   *
+   * @param key     the key of the query
+   * @param result  the result of the query
+   * @param version the version of the collection the query worked on
+   */
+  public synchronized void put(String key, QueryResult result, long version) {
+    this.advance(version);
+
+    if (version == this.version && this.capacity > 0) {
+      this.results.put(key, result);
+    }
+  }
+
+  /**
+   * Drops all cached results, if the specified version of the collection is
+   * newer than the one of the cached results.
+   *
+   * @param version the version of the collection
+   */
+  public synchronized void invalidate(long version) {
+    this.advance(version);
+  }
+
+  /**
+   * Returns the number of cached results.
+   *
+   * @return the number of cached results
+   */
+  public synchronized int size() {
+    return this.results.size();
+  }
+
+  /**
+   * Returns the maximum number of cached results.
+   *
+   * @return the maximum number of cached results
+   */
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  /**
+   * Sets the maximum number of cached results. If there are more cached
+   * results, the least recently used ones are evicted.
+   *
+   * If the specified capacity is not greater than <code>0</code>, no results
+   * are cached at all; a negative capacity is set to <code>0</code>.
+   *
+   * @param capacity the new maximum number of cached results
+   */
+  public synchronized void setCapacity(int capacity) {
+    this.capacity = Math.max(capacity, 0);
+
+    while (this.results.size() > this.capacity) {
+      this.results.remove(this.results.keySet().iterator().next());
+    }
+  }
+
+  /**
+   * Moves this cache on to the specified version of the collection, dropping
+   * all cached results, if it is newer than the current one.
+   *
+   * @param version the version of the collection
+   */
+  private void advance(long version) {
+    if (version > this.version) {
+      this.results.clear();
+      this.version = version;
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * This class represents the result of a query on a {@link DocumentCollection}.
+ *
+ * A result is an ordered list of document ids together with their similarity
+ * to the query, the most similar {@link Document} first. Both are stored in
+ * parallel arrays of primitives. The {@link Document}s themselves are looked up
+ * in the {@link CollectionSnapshot} the query worked on, so they stay
+ * available even if they are removed from the collection afterwards. A result
+ * never changes after it has been created.
+ *
+ * @see DocumentCollection#match(String, int)
+ *
+ */
+public class QueryResult {
+  /**
+   * the ids of the documents of this result
+   */
+  private final int[] documentIds;
+
+  /**
+   * the similarity of the document at the same position
+   */
+  private final double[] similarities;
+
+  /**
+   * the snapshot of the collection the documents are looked up in
+   */
+  private final CollectionSnapshot snapshot;
+
+  /**
+   * Constructs a new result.
+   *
+   * Both arrays must have the same length and must not be changed afterwards.
+   *
+   * @param documentIds  the ids of the documents, ordered descending by
+   *                     similarity
+   * @param similarities the similarities of the documents
+   * @param snapshot     the snapshot of the collection the query worked on
+   */
+  public QueryResult(int[] documentIds, double[] similarities, CollectionSnapshot snapshot) {
+    this.documentIds = documentIds;
+    this.similarities = similarities;
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Returns the number of {@link Document}s in this result.
+   *
+   * @return the number of {@link Document}s in this result
+   */
+  public int size() {
+    return this.documentIds.length;
+  }
+
+  /**
+   * Returns the id of the {@link Document} at the specified rank.
+   *
+   * If the specified index is invalid, <code>-1</code> is returned.
+   *
+   * @param index the rank, starting at <code>0</code>
+   * @return the id of the {@link Document} at the specified rank
+   */
+  public int getDocumentId(int index) {
+    if (index < 0 || index >= this.documentIds.length) {
+      return -1;
+    }
+
+    return this.documentIds[index];
+  }
+
+  /**
+   * Returns the {@link Document} at the specified rank.
+   *
+   * If the specified index is invalid, this method will return <code>null</code>.
+   *
+   * @param index the rank, starting at <code>0</code>
+   * @return the {@link Document} at the specified rank
+   */
+  public Document getDocument(int index) {
+    if (index < 0 || index >= this.documentIds.length) {
+      return null;
+    }
+
+    return this.snapshot.getDocument(this.documentIds[index]);
+  }
+
+  /**
+   * Returns the similarity of the {@link Document} at the specified rank.
+   *
+   * If the specified index is invalid, <code>-1</code> is returned.
+   *
+   * @param index the rank, starting at <code>0</code>
+   * @return the similarity of the {@link Document} at the specified rank
+   */
+  public double getSimilarity(int index) {
+    if (index < 0 || index >= this.similarities.length) {
+      return -1;
+    }
+
+    return this.similarities[index];
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * This enumeration lists the ways the similarity between a query and a
+ * {@link Document} can be calculated by
+ * {@link DocumentCollection#match(String, int, Scoring)}.
+ *
+ * Every scoring sums up a score per word shared by the query and the
+ * {@link Document} and turns the sum into the similarity of the
+ * {@link Document}. The weight of a query word is calculated once per query
+ * from the statistics of the whole collection, i.e. the number of
+ * {@link Document}s, the number of {@link Document}s containing the word and
+ * the average number of words of a {@link Document}.
+ *
+ * The similarity is linear in the sum of the scores, so every word adds its
+ * own share to the similarity. An upper bound of this share, calculated from
+ * the highest count of the word in any {@link Document}, allows a query to
+ * skip {@link Document}s that cannot be among the most similar ones.
+ *
+ * @see InvertedIndex
+ *
+ */
+public enum Scoring {
+  /**
+   * the cosine of the angle between the word count vectors of the query and
+   * the {@link Document}; no collection statistics are used
+   */
+  COSINE {
+    @Override
+    public double termWeight(int queryCount, int documentFrequency, int numDocuments) {
+      return queryCount;
+    }
+
+    @Override
+    public double termScore(double termWeight, int count, int length, double averageLength) {
+      return termWeight * count;
+    }
+
+    @Override
+    public double documentScore(double sum, double documentNorm, int length, double queryNorm) {
+      return sum / (documentNorm * queryNorm);
+    }
+
+    @Override
+    public double maxScore(double termWeight, int maxCount, double queryNorm) {
+      /* the norm of a document is at least the count of any of its words */
+      return termWeight / queryNorm;
+    }
+  },
+
+  /**
+   * the classic TF-IDF scoring: the square root of the count of a word is
+   * weighted by the square of its inverse document frequency, and the sum is
+   * normalized by the square root of the number of words of the
+   * {@link Document}
+   */
+  TF_IDF {
+    @Override
+    public double termWeight(int queryCount, int documentFrequency, int numDocuments) {
+      double idf = 1 + Math.log((double) numDocuments / (documentFrequency + 1));
+      return queryCount * idf * idf;
+    }
+
+    @Override
+    public double termScore(double termWeight, int count, int length, double averageLength) {
+      return termWeight * Math.sqrt(count);
+    }
+
+    @Override
+    public double documentScore(double sum, double documentNorm, int length, double queryNorm) {
+      return sum / Math.sqrt(length);
+    }
+
+    @Override
+    public double maxScore(double termWeight, int maxCount, double queryNorm) {
+      /* the number of words of a document is at least the count of any word */
+      return termWeight;
+    }
+  },
+
+  /**
+   * the Okapi BM25 scoring with <code>k1 = 1.2</code> and
+   * <code>b = 0.75</code>: the count of a word saturates, and
+   * {@link Document}s longer than the average are penalized
+   */
+  BM25 {
+    @Override
+    public double termWeight(int queryCount, int documentFrequency, int numDocuments) {
+      return queryCount * Math.log(1 + (numDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    @Override
+    public double termScore(double termWeight, int count, int length, double averageLength) {
+      double normalization = K1 * (1 - B + B * length / averageLength);
+      return termWeight * count * (K1 + 1) / (count + normalization);
+    }
+
+    @Override
+    public double documentScore(double sum, double documentNorm, int length, double queryNorm) {
+      return sum;
+    }
+
+    @Override
+    public double maxScore(double termWeight, int maxCount, double queryNorm) {
+      /* the score grows with the count and is highest for the shortest document */
+      return termWeight * maxCount * (K1 + 1) / (maxCount + K1 * (1 - B));
+    }
+  };
+
+  /**
+   * the saturation of the counts of words used by {@link Scoring#BM25}
+   */
+  private static final double K1 = 1.2;
+
+  /**
+   * the influence of the number of words of a {@link Document} used by
+   * {@link Scoring#BM25}
+   */
+  private static final double B = 0.75;
+
+  /**
+   * Calculates the weight of a query word.
+   *
+   * @param queryCount        the count of the word in the query
+   * @param documentFrequency the number of {@link Document}s containing the
+   *                          word
+   * @param numDocuments      the number of {@link Document}s
+   * @return the weight of the word
+   */
+  public abstract double termWeight(int queryCount, int documentFrequency, int numDocuments);
+
+  /**
+   * Calculates the score of a word shared by the query and a {@link Document}.
+   *
+   * @param termWeight    the weight of the word, cf.
+   *                      {@link Scoring#termWeight(int, int, int)}
+   * @param count         the count of the word in the {@link Document}
+   * @param length        the number of words of the {@link Document}
+   * @param averageLength the average number of words of a {@link Document}
+   * @return the score of the word
+   */
+  public abstract double termScore(double termWeight, int count, int length, double averageLength);
+
+  /**
+   * Calculates the similarity of a {@link Document} from the sum of the scores
+   * of all words it shares with the query.
+   *
+   * @param sum          the sum of the scores of the shared words
+   * @param documentNorm the length of the word count vector of the
+   *                     {@link Document}
+   * @param length       the number of words of the {@link Document}
+   * @param queryNorm    the length of the word count vector of the query
+   * @return the similarity of the {@link Document}
+   */
+  public abstract double documentScore(double sum, double documentNorm, int length, double queryNorm);
+
+  /**
+   * Calculates an upper bound of the share of a query word in the similarity
+   * of any {@link Document}.
+   *
+   * @param termWeight the weight of the word, cf.
+   *                   {@link Scoring#termWeight(int, int, int)}
+   * @param maxCount   the highest count of the word in any {@link Document}
+   * @param queryNorm  the length of the word count vector of the query
+   * @return the upper bound of the share of the word
+   */
+  public abstract double maxScore(double termWeight, int maxCount, double queryNorm);
+}
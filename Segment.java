@@ -0,0 +1,129 @@
+/**
+ * This class represents a segment of the index of a {@link DocumentCollection}.
+ *
+ * The index of a collection consists of a list of segments ordered by their
+ * base ids. Every segment indexes the {@link Document}s with ids from its base
+ * id up to the base id of the next segment, so the segments partition the
+ * range of document ids. Only the last segment gets new {@link Document}s; all
+ * others are sealed.
+ *
+ * A sealed segment is either kept in memory or stored in a file of a
+ * {@link SegmentDirectory}. The index of a stored segment, just like the one
+ * of a collection opened from an {@link IndexFile}, is mapped from its file
+ * and never changes; removed {@link Document}s are purged from it by writing
+ * a new file, never by compacting it into memory.
+ *
+ * @see InvertedIndex
+ * @see SegmentDirectory
+ *
+ */
+public class Segment {
+  /**
+   * the index of the documents of this segment
+   */
+  private final InvertedIndex index;
+
+  /**
+   * the file the index of this segment is mapped from or <code>null</code>, if
+   * it is kept in memory
+   */
+  private final IndexFile file;
+
+  /**
+   * the name of the file this segment is stored in, relative to its
+   * directory, or <code>null</code>, if it is not stored in a
+   * {@link SegmentDirectory}
+   */
+  private final String fileName;
+
+  /**
+   * Constructs a new segment kept in memory.
+   *
+   * @param index the index of the documents of the segment
+   */
+  public Segment(InvertedIndex index) {
+    this.index = index;
+    this.file = null;
+    this.fileName = null;
+  }
+
+  /**
+   * Constructs a new segment, whose index is mapped from the specified file.
+   *
+   * @param file     the file containing the documents and their index
+   * @param fileName the name of the file relative to its
+   *                 {@link SegmentDirectory} or <code>null</code>, if it is not
+   *                 stored in a {@link SegmentDirectory}
+   */
+  public Segment(IndexFile file, String fileName) {
+    this.index = file.getIndex();
+    this.file = file;
+    this.fileName = fileName;
+  }
+
+  /**
+   * Returns the index of the documents of this segment.
+   *
+   * @return the index of this segment
+   */
+  public InvertedIndex getIndex() {
+    return this.index;
+  }
+
+  /**
+   * Returns the lowest document id of this segment.
+   *
+   * @return the base id of this segment
+   */
+  public int getBaseId() {
+    return this.index.getBaseId();
+  }
+
+  /**
+   * Returns the file the index of this segment is mapped from.
+   *
+   * @return the file or <code>null</code>, if this segment is kept in memory
+   */
+  public IndexFile getFile() {
+    return this.file;
+  }
+
+  /**
+   * Returns the name of the file this segment is stored in.
+   *
+   * @return the name of the file or <code>null</code>, if this segment is not
+   *         stored in a {@link SegmentDirectory}
+   */
+  public String getFileName() {
+    return this.fileName;
+  }
+
+  /**
+   * Determines, whether this segment is stored in a file.
+   *
+   * @return <code>true</code>, if this segment is stored in a file
+   */
+  public boolean isStored() {
+    return this.fileName != null;
+  }
+
+  /**
+   * Determines, whether the index of this segment is mapped from a file, so
+   * that it must not be compacted.
+   *
+   * @return <code>true</code>, if the index of this segment is mapped
+   */
+  public boolean isMapped() {
+    return this.file != null;
+  }
+
+  /**
+   * Returns the number of entries of this segment belonging to
+   * {@link Document}s that have not been removed.
+   *
+   * @return the number of live entries
+   */
+  public int getNumLiveEntries() {
+    return this.index.getNumEntries() - this.index.getNumRemovedEntries();
+  }
+}
@@ -0,0 +1,264 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class represents a directory storing the {@link Segment}s of a
+ * {@link DocumentCollection}.
+ *
+ * Every stored segment is an {@link IndexFile} of its own, which never changes
+ * after it has been written. A manifest file lists the segments that make up
+ * the collection together with the order of its {@link Document}s; it is
+ * replaced as a whole whenever segments are added, merged or the order has to
+ * be persisted. A segment file not listed in the manifest, e.g. because the
+ * program stopped while writing it, is deleted when the directory is opened.
+ *
+ * Instances of this class are not thread-safe.
+ *
+ * @see DocumentCollection#openDirectory(String)
+ *
+ */
+public class SegmentDirectory {
+  /**
+   * the name of the manifest file
+   */
+  private static final String MANIFEST = "segments";
+
+  /**
+   * the prefix of the names of all segment files
+   */
+  private static final String SEGMENT_PREFIX = "segment_";
+
+  /**
+   * the suffix of the names of all segment files
+   */
+  private static final String SEGMENT_SUFFIX = ".idx";
+
+  /**
+   * the first four bytes of the manifest file
+   */
+  private static final int MAGIC = 0x53454753;
+
+  /**
+   * the version of the format of the manifest file
+   */
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * the directory
+   */
+  private final Path directory;
+
+  /**
+   * the number used for the name of the next segment file
+   */
+  private long generation;
+
+  /**
+   * the stored segments read when opening the directory
+   */
+  private Segment[] segments;
+
+  /**
+   * the order of the documents in the collection, as ids
+   */
+  private int[] order;
+
+  /**
+   * Opens the specified directory and reads its segments. If the directory does
+   * not exist, it is created.
+   *
+   * @param directory the name of the directory
+   * @throws IOException if the directory could not be read
+   */
+  public SegmentDirectory(String directory) throws IOException {
+    this.directory = Paths.get(directory);
+    this.generation = 0;
+    this.segments = new Segment[0];
+    this.order = new int[0];
+
+    Files.createDirectories(this.directory);
+
+    Path manifest = this.directory.resolve(MANIFEST);
+    if (Files.exists(manifest)) {
+      this.readManifest(manifest);
+    }
+
+    this.deleteUnlistedSegments();
+  }
+
+  /**
+   * Reads the specified manifest file and all segments listed in it.
+   *
+   * @param manifest the manifest file
+   * @throws IOException if the manifest or a segment could not be read
+   */
+  private void readManifest(Path manifest) throws IOException {
+    String[] fileNames;
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        throw new IOException("not a segment manifest: " + manifest);
+      }
+
+      this.generation = in.readLong();
+
+      fileNames = new String[in.readInt()];
+      for (int i = 0; i < fileNames.length; i++) {
+        fileNames[i] = in.readUTF();
+      }
+
+      this.order = new int[in.readInt()];
+      for (int i = 0; i < this.order.length; i++) {
+        this.order[i] = in.readInt();
+      }
+    }
+
+    this.segments = new Segment[fileNames.length];
+    for (int i = 0; i < fileNames.length; i++) {
+      IndexFile file = IndexFile.read(this.directory.resolve(fileNames[i]).toString());
+      this.segments[i] = new Segment(file, fileNames[i]);
+    }
+  }
+
+  /**
+   * Deletes every segment file not belonging to the segments read from the
+   * manifest.
+   *
+   * @throws IOException if the directory could not be listed
+   */
+  private void deleteUnlistedSegments() throws IOException {
+    Set<String> listed = new HashSet<String>();
+    for (int i = 0; i < this.segments.length; i++) {
+      listed.add(this.segments[i].getFileName());
+    }
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, SEGMENT_PREFIX + "*")) {
+      for (Path file : files) {
+        if (!listed.contains(file.getFileName().toString())) {
+          Files.deleteIfExists(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the stored segments read when the directory has been opened.
+   *
+   * @return the stored segments, ordered by their base ids
+   */
+  public Segment[] getSegments() {
+    return this.segments;
+  }
+
+  /**
+   * Returns the order of the documents in the collection read when the
+   * directory has been opened, as ids. Documents of the stored segments not
+   * contained in the order have been removed from the collection.
+   *
+   * @return the order of the documents
+   */
+  public int[] getOrder() {
+    return this.order;
+  }
+
+  /**
+   * Writes a new segment file containing the specified documents and reads it
+   * back.
+   *
+   * The new segment is not listed in the manifest before
+   * {@link SegmentDirectory#writeManifest(Segment[], int[])} is called.
+   *
+   * @param documents the documents, in ascending order of their ids
+   * @param ids       the ids of the documents, which they keep in the segment
+   * @param baseId    the lowest document id covered by the segment
+   * @param numIds    the number of document ids covered by the segment
+   * @param indexes   the indexes containing the documents, ordered by their
+   *                  base ids
+   * @return the new segment
+   * @throws IOException if the segment could not be written
+   */
+  public Segment writeSegment(Document[] documents, int[] ids, int baseId, int numIds, InvertedIndex[] indexes)
+      throws IOException {
+    String fileName = SEGMENT_PREFIX + this.generation + SEGMENT_SUFFIX;
+    this.generation++;
+
+    int[] order = new int[ids.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+
+    String path = this.directory.resolve(fileName).toString();
+    IndexFile.write(path, documents, ids, ids, order, baseId, numIds, indexes);
+    return new Segment(IndexFile.read(path), fileName);
+  }
+
+  /**
+   * Replaces the manifest by one listing the specified segments and order.
+   *
+   * Like an {@link IndexFile}, the new manifest is forced to disk before it is
+   * moved in place, so after a crash the directory is found either as listed
+   * by the old or by the new manifest.
+   *
+   * @param segments the stored segments, ordered by their base ids
+   * @param order    the order of the documents in the collection, as ids; it
+   *                 may only contain documents of the specified segments
+   * @throws IOException if the manifest could not be written
+   */
+  public void writeManifest(Segment[] segments, int[] order) throws IOException {
+    Path manifest = this.directory.resolve(MANIFEST);
+    Path tmpManifest = this.directory.resolve(MANIFEST + ".tmp");
+
+    try (FileChannel channel = FileChannel.open(tmpManifest, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(this.generation);
+
+      out.writeInt(segments.length);
+      for (int i = 0; i < segments.length; i++) {
+        out.writeUTF(segments[i].getFileName());
+      }
+
+      out.writeInt(order.length);
+      for (int i = 0; i < order.length; i++) {
+        out.writeInt(order[i]);
+      }
+
+      out.flush();
+      channel.force(true);
+    }
+
+    IndexFile.replace(tmpManifest, manifest);
+  }
+
+  /**
+   * Deletes the file of the specified segment, which must not be listed in the
+   * manifest anymore.
+   *
+   * Queries still working on the segment are not disturbed, since the file
+   * stays mapped until it is not used anymore. If the file cannot be deleted,
+   * it is deleted when the directory is opened the next time.
+   *
+   * @param segment the segment
+   */
+  public void deleteSegment(Segment segment) {
+    try {
+      Files.deleteIfExists(this.directory.resolve(segment.getFileName()));
+    } catch (IOException e) {
+      /* the file is not listed anymore, so it is deleted on the next opening */
+    }
+  }
+}
@@ -0,0 +1,259 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class caches the stems of the most recently stemmed words.
+ *
+ * Natural text repeats the same words over and over, so most words do not
+ * have to be stemmed again. The cache is a fixed number of sets of
+ * {@link StemCache#WAYS} slots each, and every word belongs to exactly one set
+ * determined by its hash code. A word found in its set moves to the front of
+ * the set, and storing a word pushes the other words of its set back and
+ * drops the last one, so the cache never grows beyond its capacity and two
+ * frequent words with the same set do not keep replacing each other.
+ *
+ * A word can be looked up as a range of characters of a longer text, cf.
+ * {@link StemCache#get(CharSequence, int, int)}, so finding a cached stem does
+ * not allocate anything.
+ *
+ * Instances of this class are thread-safe without locking: every slot holds an
+ * immutable entry, which is replaced as a whole. Two threads reordering the
+ * same set at the same time just lose or duplicate one of the entries.
+ *
+ * @see Document
+ *
+ */
+public class StemCache {
+  /**
+   * the number of slots of a set
+   */
+  static final int WAYS = 4;
+
+  /**
+   * the cached entries, the slots of a set one after another, the most
+   * recently used entry of a set first
+   */
+  private final Entry[] entries;
+
+  /**
+   * the number of lookups that found the word
+   */
+  private final LongAdder hits;
+
+  /**
+   * the number of lookups that did not find the word
+   */
+  private final LongAdder misses;
+
+  /**
+   * Constructs an empty cache.
+   *
+   * The capacity is rounded up to the next power of two, but at least
+   * {@link StemCache#WAYS}.
+   *
+   * @param capacity the maximum number of cached stems
+   */
+  public StemCache(int capacity) {
+    int size = WAYS;
+    while (size < capacity && size < (1 << 30)) {
+      size <<= 1;
+    }
+
+    this.entries = new Entry[size];
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+  }
+
+  /**
+   * Returns the cached stem of the specified word.
+   *
+   * @param word the word
+   * @return the stem of the word or <code>null</code>, if it is not cached
+   */
+  public String get(String word) {
+    return this.get(word, 0, word.length());
+  }
+
+  /**
+   * Returns the cached stem of the word made of the specified range of
+   * characters of the specified text, without building the word.
+   *
+   * @param text  the text
+   * @param start the index of the first character of the word
+   * @param end   the index after the last character of the word
+   * @return the stem of the word or <code>null</code>, if it is not cached
+   */
+  public String get(CharSequence text, int start, int end) {
+    Entry[] entries = this.entries;
+    int set = this.set(hash(text, start, end));
+
+    for (int way = 0; way < WAYS; way++) {
+      Entry entry = entries[set + way];
+
+      if (entry == null) {
+        break;
+      }
+
+      if (entry.matches(text, start, end)) {
+        /* frequent words move to the front and are dropped last */
+        if (way > 0) {
+          entries[set + way] = entries[set + way - 1];
+          entries[set + way - 1] = entry;
+        }
+
+        this.hits.increment();
+        return entry.stem;
+      }
+    }
+
+    this.misses.increment();
+    return null;
+  }
+
+  /**
+   * Caches the stem of the specified word in front of the words cached in the
+   * same set, dropping the least recently used word of the set.
+   *
+   * @param word the word
+   * @param stem the stem of the word
+   */
+  public void put(String word, String stem) {
+    Entry[] entries = this.entries;
+    int set = this.set(word.hashCode());
+
+    for (int way = WAYS - 1; way > 0; way--) {
+      entries[set + way] = entries[set + way - 1];
+    }
+    entries[set] = new Entry(word, stem);
+  }
+
+  /**
+   * Returns the maximum number of cached stems.
+   *
+   * @return the maximum number of cached stems
+   */
+  public int getCapacity() {
+    return this.entries.length;
+  }
+
+  /**
+   * Returns the number of lookups that found the word so far.
+   *
+   * @return the number of hits
+   */
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  /**
+   * Returns the number of lookups that did not find the word so far.
+   *
+   * @return the number of misses
+   */
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  /**
+   * Returns the ratio of the lookups that found the word so far.
+   *
+   * @return the hit ratio between <code>0</code> and <code>1</code> or
+   *         <code>0</code>, if there has not been any lookup yet
+   */
+  public double getHitRatio() {
+    long hits = this.hits.sum();
+    long lookups = hits + this.misses.sum();
+
+    if (lookups == 0) {
+      return 0;
+    }
+
+    return (double) hits / lookups;
+  }
+
+  /**
+   * Resets the numbers of hits and misses to <code>0</code>.
+   */
+  public void resetStatistics() {
+    this.hits.reset();
+    this.misses.reset();
+  }
+
+  /**
+   * Returns the first slot of the set of words with the specified hash code.
+   *
+   * @param hash the hash code of a word
+   * @return the index of the first slot of the set
+   */
+  private int set(int hash) {
+    return ((hash ^ (hash >>> 16)) * WAYS) & (this.entries.length - 1);
+  }
+
+  /**
+   * Computes the hash code of the word made of the specified range of
+   * characters of the specified text, which equals
+   * {@link String#hashCode()} of the word.
+   *
+   * @param text  the text
+   * @param start the index of the first character of the word
+   * @param end   the index after the last character of the word
+   * @return the hash code of the word
+   */
+  private static int hash(CharSequence text, int start, int end) {
+    int hash = 0;
+
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + text.charAt(i);
+    }
+
+    return hash;
+  }
+
+  /**
+   * This class represents a word together with its stem.
+   */
+  private static final class Entry {
+    /**
+     * the word
+     */
+    private final String word;
+
+    /**
+     * the stem of the word
+     */
+    private final String stem;
+
+    /**
+     * Constructs a new entry.
+     *
+     * @param word the word
+     * @param stem the stem of the word
+     */
+    private Entry(String word, String stem) {
+      this.word = word;
+      this.stem = stem;
+    }
+
+    /**
+     * Determines, whether the word of this entry is made of the specified
+     * range of characters of the specified text.
+     *
+     * @param text  the text
+     * @param start the index of the first character of the word
+     * @param end   the index after the last character of the word
+     * @return <code>true</code>, if the word matches
+     */
+    private boolean matches(CharSequence text, int start, int end) {
+      if (this.word.length() != end - start) {
+        return false;
+      }
+
+      for (int i = start; i < end; i++) {
+        if (this.word.charAt(i - start) != text.charAt(i)) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * This class represents a set of suffices, stored as a trie of the reversed
+ * suffices.
+ *
+ * Every path from the root of the trie spells a suffix backwards, starting with
+ * its last character. Hence, the longest suffix of a word contained in the set
+ * is found by walking the trie along the characters of the word from its end,
+ * which visits every character at most once, no matter how many suffices the
+ * set contains.
+ *
+ * Instances of this class never change after they have been constructed.
+ *
+ * @see Document#SUFFICES
+ *
+ */
+public class SuffixTrie {
+  /**
+   * the root of the trie, representing the empty suffix
+   */
+  private final Node root;
+
+  /**
+   * Constructs a trie containing the specified suffices.
+   *
+   * <code>null</code> elements and empty suffices are ignored.
+   *
+   * @param suffices the suffices
+   */
+  public SuffixTrie(String[] suffices) {
+    this.root = new Node();
+
+    for (int i = 0; i < suffices.length; i++) {
+      if (suffices[i] != null && !suffices[i].equals("")) {
+        this.insert(suffices[i]);
+      }
+    }
+  }
+
+  /**
+   * Inserts the specified suffix into the trie, starting with its last
+   * character.
+   *
+   * @param suffix the suffix
+   */
+  private void insert(String suffix) {
+    Node node = this.root;
+
+    for (int i = suffix.length() - 1; i >= 0; i--) {
+      Node child = node.getChild(suffix.charAt(i));
+
+      if (child == null) {
+        child = node.addChild(suffix.charAt(i));
+      }
+
+      node = child;
+    }
+
+    node.isSuffix = true;
+  }
+
+  /**
+   * Returns the length of the longest suffix of the specified word contained in
+   * this trie.
+   *
+   * A suffix may be as long as the word itself.
+   *
+   * @param word the word
+   * @return the length of the longest suffix of the word contained in this trie
+   *         or <code>0</code>, if there is none
+   */
+  public int longestSuffixLength(String word) {
+    if (word == null) {
+      return 0;
+    }
+
+    Node node = this.root;
+    int longest = 0;
+
+    for (int i = word.length() - 1; i >= 0 && node != null; i--) {
+      node = node.getChild(word.charAt(i));
+
+      if (node != null && node.isSuffix) {
+        longest = word.length() - i;
+      }
+    }
+
+    return longest;
+  }
+
+  /**
+   * A node of the trie.
+   */
+  private static final class Node {
+    /**
+     * the characters of the outgoing edges in ascending order
+     */
+    private char[] characters = new char[0];
+
+    /**
+     * the child at the end of the edge with the character at the same position
+     */
+    private Node[] children = new Node[0];
+
+    /**
+     * <code>true</code>, if the path from the root to this node spells a suffix
+     */
+    private boolean isSuffix = false;
+
+    /**
+     * Returns the child at the end of the edge with the specified character or
+     * <code>null</code>, if there is no such edge.
+     *
+     * @param c the character
+     * @return the child or <code>null</code>
+     */
+    private Node getChild(char c) {
+      /* the characters are sorted, so we can use binary search */
+      int low = 0;
+      int high = this.characters.length - 1;
+
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+
+        if (this.characters[mid] < c) {
+          low = mid + 1;
+        } else if (this.characters[mid] > c) {
+          high = mid - 1;
+        } else {
+          return this.children[mid];
+        }
+      }
+
+      return null;
+    }
+
+    /**
+     * Adds a new child at the end of an edge with the specified character.
+     *
+     * @param c the character, which must not have an edge yet
+     * @return the new child
+     */
+    private Node addChild(char c) {
+      /* find the position keeping the characters sorted */
+      int position = 0;
+      while (position < this.characters.length && this.characters[position] < c) {
+        position++;
+      }
+
+      char[] newCharacters = new char[this.characters.length + 1];
+      Node[] newChildren = new Node[this.children.length + 1];
+
+      System.arraycopy(this.characters, 0, newCharacters, 0, position);
+      System.arraycopy(this.children, 0, newChildren, 0, position);
+      System.arraycopy(this.characters, position, newCharacters, position + 1, this.characters.length - position);
+      System.arraycopy(this.children, position, newChildren, position + 1, this.children.length - position);
+
+      Node child = new Node();
+      newCharacters[position] = c;
+      newChildren[position] = child;
+
+      this.characters = newCharacters;
+      this.children = newChildren;
+      return child;
+    }
+  }
+}
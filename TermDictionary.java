@@ -0,0 +1,224 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class represents the dictionary of all words known to the program.
+ *
+ * Every word is stored only once and gets a dense <code>int</code> id, which
+ * never changes: the first word gets the id <code>0</code>, the next new word
+ * the id <code>1</code> and so on. Classes like {@link WordCountsArray} and
+ * {@link InvertedIndex} store these ids instead of the words themselves, so
+ * that every word is kept in memory only once and words can be compared by
+ * comparing <code>int</code>s.
+ *
+ * The ids are found by an open addressing hash table, which holds the id plus
+ * one of every word in the slot of its hash or one of the following slots, so
+ * neither the words nor the ids are wrapped in further objects. The table is
+ * at most half full and replaced by a table of twice the size before.
+ *
+ * There is a single instance of this class, cf.
+ * {@link TermDictionary#getInstance()}, since the ids of a
+ * {@link WordCountsArray} are assigned before its {@link Document} is added to
+ * any collection. Words of an {@link IndexFile} are only added when they are
+ * needed. Looking up words takes no lock and is possible from any number of
+ * threads concurrently; adding new words is synchronized.
+ *
+ */
+public final class TermDictionary {
+  /**
+   * the one and only instance
+   */
+  private static final TermDictionary INSTANCE = new TermDictionary();
+
+  /**
+   * the initial number of slots of the hash table
+   */
+  private static final int MIN_TABLE_SIZE = 2048;
+
+  /**
+   * the hash table of the ids plus one of all words, <code>0</code> for empty
+   * slots; its size is a power of two
+   */
+  private volatile AtomicIntegerArray table;
+
+  /**
+   * the words, indexed by their id
+   */
+  private volatile String[] terms;
+
+  /**
+   * the number of words in the dictionary
+   */
+  private volatile int size;
+
+  /**
+   * Private constructor, use {@link TermDictionary#getInstance()}.
+   */
+  private TermDictionary() {
+    this.table = new AtomicIntegerArray(MIN_TABLE_SIZE);
+    this.terms = new String[MIN_TABLE_SIZE / 2];
+    this.size = 0;
+  }
+
+  /**
+   * Returns the one and only instance of this class.
+   *
+   * @return the term dictionary
+   */
+  public static TermDictionary getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the id of the specified word. If the word is not yet contained in
+   * the dictionary, it is added and gets a new id.
+   *
+   * @param word the word
+   * @return the id of the word
+   */
+  public int intern(String word) {
+    int id = this.find(this.table, word);
+
+    if (id != -1) {
+      return id;
+    }
+
+    return this.add(word);
+  }
+
+  /**
+   * Adds the specified word to the dictionary, unless another thread has done
+   * so in the meantime, and returns its id.
+   *
+   * @param word the word
+   * @return the id of the word
+   */
+  private synchronized int add(String word) {
+    int id = this.find(this.table, word);
+
+    if (id != -1) {
+      return id;
+    }
+
+    /* if we have reached the end of the array, increase the array size */
+    if (this.size == this.terms.length) {
+      String[] newTerms = new String[this.size * 2];
+      System.arraycopy(this.terms, 0, newTerms, 0, this.size);
+      this.terms = newTerms;
+    }
+
+    /* keep the table at most half full */
+    if (2 * (this.size + 1) > this.table.length()) {
+      AtomicIntegerArray newTable = new AtomicIntegerArray(2 * this.table.length());
+      for (int i = 0; i < this.size; i++) {
+        insert(newTable, this.terms[i], i);
+      }
+      this.table = newTable;
+    }
+
+    /* store the word before publishing its id */
+    int newId = this.size;
+    this.terms[newId] = word;
+    this.size = newId + 1;
+    insert(this.table, word, newId);
+    return newId;
+  }
+
+  /**
+   * Returns the id of the specified word without adding it to the dictionary.
+   *
+   * @param word the word
+   * @return the id of the word or <code>-1</code>, if the word is not contained
+   *         in the dictionary
+   */
+  public int getId(String word) {
+    if (word == null) {
+      return -1;
+    }
+
+    return this.find(this.table, word);
+  }
+
+  /**
+   * Looks up the specified word in the specified hash table. A word added by
+   * another thread after the table has been replaced may be missed.
+   *
+   * @param table the hash table
+   * @param word  the word
+   * @return the id of the word or <code>-1</code>, if the word is not contained
+   *         in the table
+   */
+  private int find(AtomicIntegerArray table, String word) {
+    int hash = word.hashCode();
+    int mask = table.length() - 1;
+
+    for (int slot = slotOf(hash, mask);; slot = (slot + 1) & mask) {
+      int id = table.get(slot) - 1;
+
+      if (id == -1) {
+        return -1;
+      }
+
+      /* the word has been stored before its id */
+      String term = this.terms[id];
+      if (term.hashCode() == hash && term.equals(word)) {
+        return id;
+      }
+    }
+  }
+
+  /**
+   * Inserts the id of the specified word into the specified hash table, which
+   * must not contain the word yet and must have an empty slot.
+   *
+   * @param table the hash table
+   * @param word  the word
+   * @param id    the id of the word
+   */
+  private static void insert(AtomicIntegerArray table, String word, int id) {
+    int mask = table.length() - 1;
+    int slot = slotOf(word.hashCode(), mask);
+
+    while (table.get(slot) != 0) {
+      slot = (slot + 1) & mask;
+    }
+
+    table.set(slot, id + 1);
+  }
+
+  /**
+   * Returns the slot of the specified hash, mixing the upper bits into the
+   * lower ones kept by the mask.
+   *
+   * @param hash the hash of a word
+   * @param mask the size of the table minus one
+   * @return the slot
+   */
+  private static int slotOf(int hash, int mask) {
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  /**
+   * Returns the word with the specified id.
+   *
+   * @param id the id
+   * @return the word with the specified id or <code>null</code>, if the id is
+   *         invalid
+   */
+  public String getTerm(int id) {
+    if (id < 0 || id >= this.size) {
+      return null;
+    }
+
+    return this.terms[id];
+  }
+
+  /**
+   * Returns the number of words in the dictionary. Every id is lower than this
+   * number.
+   *
+   * @return the number of words in the dictionary
+   */
+  public int size() {
+    return this.size;
+  }
+}
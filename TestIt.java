@@ -41,10 +41,11 @@ public class TestIt {
         /* query on the documents in the collection */
         String searchQuery = command.substring(6);
 
-        dc.match(searchQuery);
+        QueryResult result = dc.match(searchQuery);
 
-        for (int i = 0; i < dc.numDocuments(); i++) {
-          System.out.println((i + 1) + ". " + dc.get(i).getTitle() + "; Aehnlichkeit: " + dc.getQuerySimilarity(i));
+        for (int i = 0; i < result.size(); i++) {
+          System.out.println((i + 1) + ". " + result.getDocument(i).getTitle() + "; Aehnlichkeit: "
+              + result.getSimilarity(i));
         }
 
         System.out.println();
@@ -65,6 +66,11 @@ public class TestIt {
             System.out.println(doc.getTitle() + ": " + count + "x ");
           }
         }
+      } else if (command.equals("check")) {
+        /* check the index on generated documents */
+        if (!IndexCheck.checkAll(System.out)) {
+          System.out.println("Mindestens eine Pruefung ist fehlgeschlagen.");
+        }
       }
     }
   }
@@ -0,0 +1,228 @@
+/**
+ * This class collects the <code>k</code> document ids with the highest
+ * similarities out of a stream of document ids and similarities.
+ *
+ * The collected entries are kept in a min-heap of size at most
+ * <code>k</code>, so that the entry with the lowest similarity, which is the
+ * one to be replaced next, is always at the root. Offering an entry therefore
+ * takes <code>O(log k)</code> time, independent of how many entries are
+ * offered altogether.
+ *
+ * @see DocumentCollection#match(String, int)
+ *
+ */
+public class TopDocuments {
+  /**
+   * the ids of the collected documents, ordered as a min-heap
+   */
+  private int[] documentIds;
+
+  /**
+   * the similarities of the collected documents
+   */
+  private double[] similarities;
+
+  /**
+   * the actual number of collected documents
+   */
+  private int size;
+
+  /**
+   * Constructs an empty instance collecting at most <code>k</code> documents.
+   *
+   * If <code>k</code> is lower than <code>0</code>, no documents will be
+   * collected at all.
+   *
+   * @param k the maximum number of collected documents
+   */
+  public TopDocuments(int k) {
+    if (k < 0) {
+      k = 0;
+    }
+
+    this.documentIds = new int[k];
+    this.similarities = new double[k];
+    this.size = 0;
+  }
+
+  /**
+   * Offers the specified document id and similarity.
+   *
+   * The entry is collected, if less than <code>k</code> entries have been
+   * collected so far or if its similarity is higher than the lowest collected
+   * similarity. In the latter case, the entry with the lowest similarity is
+   * dropped. Of two entries with the same similarity, the one with the lower
+   * document id is preferred.
+   *
+   * @param documentId the id of the document
+   * @param similarity the similarity of the document
+   * @return <code>true</code>, if the entry has been collected
+   */
+  public boolean offer(int documentId, double similarity) {
+    if (this.size < this.documentIds.length) {
+      /* still room: append and sift up */
+      this.documentIds[this.size] = documentId;
+      this.similarities[this.size] = similarity;
+      this.siftUp(this.size);
+      this.size++;
+      return true;
+    }
+
+    if (this.size == 0 || !this.isLower(0, documentId, similarity)) {
+      return false;
+    }
+
+    /* replace the lowest entry and restore the heap */
+    this.documentIds[0] = documentId;
+    this.similarities[0] = similarity;
+    this.siftDown(0, this.size);
+    return true;
+  }
+
+  /**
+   * Returns <code>true</code>, if <code>k</code> entries have been collected.
+   *
+   * @return <code>true</code>, if <code>k</code> entries have been collected
+   */
+  public boolean isFull() {
+    return this.size == this.documentIds.length;
+  }
+
+  /**
+   * Returns the lowest collected similarity, or <code>0</code> if nothing has
+   * been collected yet.
+   *
+   * An entry whose similarity is not higher than this value can only be
+   * collected, if the instance is not full.
+   *
+   * @return the lowest collected similarity
+   */
+  public double getMinSimilarity() {
+    if (this.size == 0) {
+      return 0;
+    }
+
+    return this.similarities[0];
+  }
+
+  /**
+   * Returns the number of collected entries.
+   *
+   * @return the number of collected entries
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Sorts the collected entries descending according to their similarity.
+   *
+   * No more entries may be offered afterwards.
+   */
+  public void sortDescending() {
+    /* heap sort: move the lowest entry to the end of the unsorted part */
+    for (int end = this.size - 1; end > 0; end--) {
+      this.swap(0, end);
+      this.siftDown(0, end);
+    }
+  }
+
+  /**
+   * Returns the document id of the entry at the specified position.
+   *
+   * The entries are in heap order, until
+   * {@link TopDocuments#sortDescending()} has been called.
+   *
+   * @param index the position
+   * @return the document id at the specified position
+   */
+  public int getDocumentId(int index) {
+    return this.documentIds[index];
+  }
+
+  /**
+   * Returns the similarity of the entry at the specified position.
+   *
+   * @param index the position
+   * @return the similarity at the specified position
+   */
+  public double getSimilarity(int index) {
+    return this.similarities[index];
+  }
+
+  /**
+   * Determines, whether the entry at the specified position ranks lower than
+   * the specified document id and similarity.
+   *
+   * @param index      the position in the heap
+   * @param documentId the other document id
+   * @param similarity the other similarity
+   * @return <code>true</code>, if the entry at the specified position ranks
+   *         lower
+   */
+  private boolean isLower(int index, int documentId, double similarity) {
+    if (this.similarities[index] != similarity) {
+      return this.similarities[index] < similarity;
+    }
+
+    return this.documentIds[index] > documentId;
+  }
+
+  /**
+   * Moves the entry at the specified position up until the heap is valid.
+   *
+   * @param index the position
+   */
+  private void siftUp(int index) {
+    while (index > 0) {
+      int parent = (index - 1) / 2;
+
+      if (!this.isLower(index, this.documentIds[parent], this.similarities[parent])) {
+        return;
+      }
+
+      this.swap(index, parent);
+      index = parent;
+    }
+  }
+
+  /**
+   * Moves the entry at the specified position down until the first
+   * <code>end</code> entries form a valid heap.
+   *
+   * @param index the position
+   * @param end   the number of entries belonging to the heap
+   */
+  private void siftDown(int index, int end) {
+    while (2 * index + 1 < end) {
+      /* pick the lower child */
+      int child = 2 * index + 1;
+      if (child + 1 < end && this.isLower(child + 1, this.documentIds[child], this.similarities[child])) {
+        child++;
+      }
+
+      if (!this.isLower(child, this.documentIds[index], this.similarities[index])) {
+        return;
+      }
+
+      this.swap(index, child);
+      index = child;
+    }
+  }
+
+  /**
+   * Swaps the entries at the two specified positions.
+   *
+   * @param index1 the first position
+   * @param index2 the second position
+   */
+  private void swap(int index1, int index2) {
+    int tmpId = this.documentIds[index1];
+    this.documentIds[index1] = this.documentIds[index2];
+    this.documentIds[index2] = tmpId;
+
+    double tmpSimilarity = this.similarities[index1];
+    this.similarities[index1] = this.similarities[index2];
+    this.similarities[index2] = tmpSimilarity;
+  }
+}
@@ -3,25 +3,60 @@
  * 
  * This class ensures, that no empty words are added and that the word count is
  * always greater than or equal to <code>0</code>.
+ * 
+ * The words are not stored themselves, but by their id in the
+ * {@link TermDictionary}, in an array parallel to the array of counts. An open
+ * addressing hash table maps every word id to its index in these arrays, so
+ * that looking up a word does not require scanning the whole array.
  *
  */
 public class WordCountsArray {
   /**
-   * the administered WordCount-objects
+   * the ids of the administered words in the {@link TermDictionary}
+   */
+  private int[] termIds;
+
+  /**
+   * the count of the word at the same position of <code>termIds</code>
    */
-  private WordCount[] wordCounts;
+  private int[] counts;
 
   /**
-   * the actual number of administered WordCount-objects
+   * the actual number of administered words
    */
   private int actualSize;
 
   /**
-   * the maximum number of administrable WordCount-objects; not final because of
-   * Uebung 3 g)
+   * the maximum number of administrable words; not final because of Uebung 3 g)
    */
   private int maxSize;
 
+  /**
+   * hash table mapping the id of every administered word to its index in
+   * <code>termIds</code>; every entry holds the index plus one, so that
+   * <code>0</code> marks an empty slot. The length is always a power of two.
+   */
+  private int[] hashTable;
+
+  /**
+   * the number of leading words known to be ordered lexicographically, so
+   * that sorting them again can be skipped; words added behind them are only
+   * checked when the order is needed
+   */
+  private int sortedSize;
+
+  /**
+   * the number of words from which on a range is sorted by multikey quicksort
+   * instead of insertion sort
+   */
+  private static final int INSERTION_SORT_THRESHOLD = 12;
+
+  /**
+   * the length of the vector of word counts, or a negative value, if it has to
+   * be calculated again because the counts have changed
+   */
+  private double norm;
+
   /**
    * Creates a new instance of this class.
    * 
@@ -39,7 +74,64 @@ public class WordCountsArray {
     }
 
     this.actualSize = 0;
-    this.wordCounts = new WordCount[this.maxSize];
+    this.sortedSize = 0;
+    this.termIds = new int[this.maxSize];
+    this.counts = new int[this.maxSize];
+    this.hashTable = new int[tableSizeFor(this.maxSize)];
+    this.norm = 0;
+  }
+
+  /**
+   * Returns the length of a hash table that is able to administer the specified
+   * number of words, i.e. the smallest power of two that is at least twice as
+   * large.
+   * 
+   * @param numWords the number of words
+   * @return the length of the hash table
+   */
+  private static int tableSizeFor(int numWords) {
+    int tableSize = 2;
+    while (tableSize < 2 * numWords) {
+      tableSize *= 2;
+    }
+    return tableSize;
+  }
+
+  /**
+   * Returns the slot of the hash table where the word with the specified id is
+   * stored or, if the word is not administered, the empty slot where it would be
+   * stored.
+   * 
+   * @param termId the id of the word
+   * @return the slot of the hash table
+   */
+  private int findSlot(int termId) {
+    int mask = this.hashTable.length - 1;
+    /* ids are dense, so scramble them to spread neighbours over the table */
+    int hash = termId * 0x9E3779B9;
+    int slot = (hash ^ (hash >>> 16)) & mask;
+
+    /* linear probing until we find the word or an empty slot */
+    while (this.hashTable[slot] != 0) {
+      if (this.termIds[this.hashTable[slot] - 1] == termId) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    return slot;
+  }
+
+  /**
+   * Rebuilds the hash table from the array of word ids, e.g. after the array
+   * has been reordered.
+   */
+  private void rebuildHashTable() {
+    this.hashTable = new int[tableSizeFor(this.actualSize)];
+
+    for (int i = 0; i < this.actualSize; i++) {
+      this.hashTable[this.findSlot(this.termIds[i])] = i + 1;
+    }
   }
 
   /**
@@ -49,8 +141,8 @@ public class WordCountsArray {
    * count of the specified word is increased by the given count.
    * 
    * If the specified word is not already administered by this instance, this
-   * method creates a new {@link WordCount} instance and administers this newly
-   * created with count <code>count</code>. If the specified word is
+   * method administers it with count <code>count</code>, adding it to the
+   * {@link TermDictionary} if necessary. If the specified word is
    * <code>null</code> or an empty {@link String}, nothing will happen. If the
    * specified count is lower than <code>0</code>, nothing will happen.
    * 
@@ -67,13 +159,67 @@ public class WordCountsArray {
       return;
     }
 
+    this.addTerm(TermDictionary.getInstance().intern(word.toLowerCase()), count);
+  }
+
+  /**
+   * Adds the specified word with the specified count to this instance, if it
+   * is already contained in the {@link TermDictionary}. Unlike
+   * {@link WordCountsArray#add(String, int)}, this method never adds a word to
+   * the {@link TermDictionary}.
+   * 
+   * If the specified word is <code>null</code>, an empty {@link String} or not
+   * contained in the {@link TermDictionary}, nothing will happen. If the
+   * specified count is lower than <code>0</code>, nothing will happen.
+   * 
+   * @param word  the word to be added
+   * @param count the count of the word to be added
+   * @return <code>false</code>, if the word has not been added, because it is
+   *         not contained in the {@link TermDictionary}
+   */
+  public boolean addKnown(String word, int count) {
+    if (word == null || word.equals("")) {
+      return true;
+    }
+
+    if (count < 0) {
+      return true;
+    }
+
+    int termId = TermDictionary.getInstance().getId(word.toLowerCase());
+
+    if (termId == -1) {
+      return false;
+    }
+
+    this.addTerm(termId, count);
+    return true;
+  }
+
+  /**
+   * Adds the word with the specified id in the {@link TermDictionary} with the
+   * specified count to this instance. Unlike
+   * {@link WordCountsArray#add(String, int)}, this method neither converts the
+   * word to lower case nor looks it up in the {@link TermDictionary}, e.g. for
+   * words read from an {@link IndexFile}.
+   * 
+   * @param termId the id of the word to be added
+   * @param count  the count of the word to be added, at least <code>0</code>
+   */
+  void addTerm(int termId, int count) {
+    /* a count of 0 does not change the length */
+    if (count > 0) {
+      this.norm = -1;
+    }
+
     /* get the index, if the word is already administered */
-    int index = getIndexOfWord(word.toLowerCase());
+    int slot = this.findSlot(termId);
+    int index = this.hashTable[slot] - 1;
 
     /* word found? */
     if (index == -1) {
       /*
-       * the word has not been found, so create a new WordCount instance and add it
+       * the word has not been found, so add it
        */
 
       /*
@@ -83,64 +229,33 @@ public class WordCountsArray {
         this.doubleSize();
       }
 
-      this.wordCounts[actualSize] = new WordCount(word.toLowerCase(), count);
+      this.termIds[actualSize] = termId;
+      this.counts[actualSize] = count;
+      this.hashTable[slot] = actualSize + 1;
       this.actualSize++;
+
+      /* keep the hash table at most half full */
+      if (2 * this.actualSize > this.hashTable.length) {
+        this.rebuildHashTable();
+      }
     } else {
       /*
        * the word has been found and therefore it is already administered, so add the
        * count
        */
-      this.wordCounts[index].incrementCount(count);
-    }
-  }
-
-  /**
-   * Determines, whether the words administered by this instance and the words in
-   * the specified {@link WordCountsArray} are equal.
-   * 
-   * This method returns <code>true</code>, if
-   * <ul>
-   * <li>the words administered by this instance and the words administered by the
-   * specified {@link WordCountsArray} instance are the same <b>and</b></li>
-   * <li>the words are in the same order</li>
-   * </ul>
-   * Otherwise, this method will return <code>false</code>.
-   * 
-   * @param wca the {@link WordCountsArray} that will be compared
-   * @return <code>true</code>, if the administered words equal as described in
-   *         detail above; <code>false</code> otherwise.
-   */
-  private boolean wordsEqual(WordCountsArray wca) {
-    /* make it short: the same */
-    if (this == wca) {
-      return true;
-    }
-
-    /* cannot be the same */
-    if ((wca == null) || (this.size() != wca.size())) {
-      return false;
-    }
-
-    /* compare every single word at every position */
-    for (int i = 0; i < this.size(); i++) {
-      if (!this.getWord(i).equals(wca.getWord(i))) {
-        return false;
-      }
+      this.counts[index] += count;
     }
-
-    return true;
   }
 
   /**
    * Calculate the scalar product of the word counts of this instance and the word
    * counts of the specified {@link WordCountsArray}.
    * 
-   * If the two {@link WordCountsArray} have a different size, <code>0</code> is
-   * returned. Also, if the words contained in the two {@link WordCountsArray}s
-   * are not exactly the same (cf.
-   * {@link WordCountsArray#wordsEqual(WordCountsArray)}), the result is
-   * <code>0</code>. If <code>wca</code> is <code>null</code>, <code>0</code> is
-   * returned.
+   * The two {@link WordCountsArray}s do not need to administer the same words:
+   * a word administered by only one of them simply contributes <code>0</code>.
+   * Therefore, only the words of the smaller {@link WordCountsArray} are looked
+   * up in the larger one. If <code>wca</code> is <code>null</code>,
+   * <code>0</code> is returned.
    * 
    * @param wca the 2nd {@link WordCountsArray}
    * @return the scalar product of this instance and the specified
@@ -151,138 +266,218 @@ public class WordCountsArray {
       return 0;
     }
 
-    /* scalar product is 0 by definition, if size is different */
-    if (this.size() != wca.size()) {
-      return 0;
+    long scalarProduct = 0;
+
+    /* the scalar product with itself does not need any lookups */
+    if (this == wca) {
+      for (int i = 0; i < this.actualSize; i++) {
+        scalarProduct += (long) this.counts[i] * this.counts[i];
+      }
+      return scalarProduct;
     }
 
-    /*
-     * also, the scalar product is 0 by definition, if the contained words are not
-     * exactly the same. Though, if this == wca we do not have to do the
-     * wordsEqual()-check.
-     */
-    if ((this != wca) && !this.wordsEqual(wca)) {
-      return 0;
+    /* iterate over the smaller one, look up in the larger one */
+    WordCountsArray smaller = this;
+    WordCountsArray larger = wca;
+    if (smaller.size() > larger.size()) {
+      smaller = wca;
+      larger = this;
     }
 
-    double scalarProduct = 0;
+    for (int i = 0; i < smaller.actualSize; i++) {
+      int count = smaller.counts[i];
 
-    for (int i = 0; i < this.size(); i++) {
-      scalarProduct += this.getCount(i) * wca.getCount(i);
+      if (count != 0) {
+        int index = larger.hashTable[larger.findSlot(smaller.termIds[i])] - 1;
+
+        if (index != -1) {
+          scalarProduct += (long) count * larger.counts[index];
+        }
+      }
     }
 
     return scalarProduct;
   }
 
   /**
-   * Sorts the <code>WordCount</code> objects administered by this instance.
+   * Sorts the words administered by this instance.
    * 
-   * After calling this method the administered <code>WordCount</code> objects are
-   * ordered lexicographically according to the words represented by the
-   * <code>WordCount</code> objects.
+   * After calling this method the administered words and their counts are
+   * ordered lexicographically according to the words. If no word has been
+   * added out of order since the last call, only the words added since then
+   * are compared.
    */
   public void sort() {
-    this.doBucketSort();
+    if (this.isSorted()) {
+      return;
+    }
+
+    this.doMultikeyQuicksort();
+    this.sortedSize = this.actualSize;
   }
 
   /**
-   * Sorts the <code>WordCount</code> objects administered by this instance with
-   * the bubble sort algorithm.
+   * Determines, whether the administered words are ordered lexicographically,
+   * i.e. whether {@link WordCountsArray#sort()} has nothing to do.
+   * 
+   * @return <code>true</code>, if the words are sorted
+   */
+  public boolean isSorted() {
+    /* only the words added since the last check are compared */
+    if (this.sortedSize < this.actualSize) {
+      String previous = this.sortedSize == 0 ? null : this.getWord(this.sortedSize - 1);
+
+      while (this.sortedSize < this.actualSize) {
+        String word = this.getWord(this.sortedSize);
+
+        if (previous != null && previous.compareTo(word) > 0) {
+          return false;
+        }
+
+        previous = word;
+        this.sortedSize++;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Sorts the words administered by this instance with the bubble sort
+   * algorithm.
    */
   private void doBubbleSort() {
     for (int pass = 1; pass < this.actualSize; pass++) {
       for (int i = 0; i < this.actualSize - pass; i++) {
         if (this.getWord(i).compareTo(this.getWord(i + 1)) > 0) {
-          WordCount tmp = this.wordCounts[i];
-          this.wordCounts[i] = this.wordCounts[i + 1];
-          this.wordCounts[i + 1] = tmp;
+          this.swap(i, i + 1);
         }
       }
     }
-  }
 
-  private static char bucketCharAt(String word, int maxLength, int index) {
-    int iPrime = maxLength - index - 1;
-    if(iPrime >= word.length())
-      return 'a';
-    return word.charAt(iPrime);
+    this.rebuildHashTable();
   }
-  
+
   /**
-   * Sorts the <code>WordCount</code> objects administered by this instance with
-   * the bucket sort algorithm.
+   * Swaps the words and counts at the specified positions.
    * 
-   * This method assumes, that all words begin with a lower case letter.
+   * @param i the first position
+   * @param j the second position
    */
-  private void doBucketSort() {
-    /* one bucket for every character */
-    WordCountsArray[] buckets = new WordCountsArray[26];
-
-    /* initialize the buckets */
-    for (int i = 0; i < buckets.length; i++)
-      buckets[i] = new WordCountsArray(this.actualSize / 26);
+  private void swap(int i, int j) {
+    int tmp = this.termIds[i];
+    this.termIds[i] = this.termIds[j];
+    this.termIds[j] = tmp;
+
+    tmp = this.counts[i];
+    this.counts[i] = this.counts[j];
+    this.counts[j] = tmp;
+  }
 
-    int maxLength = 0;
+  /**
+   * Sorts the words administered by this instance with the multikey quicksort
+   * algorithm, i.e. a three-way quicksort on the character at the current
+   * position, which moves on to the next position for the words equal to the
+   * pivot character.
+   * 
+   * Words and counts are rearranged in place, comparing the words character by
+   * character just like {@link String#compareTo(String)}, so any characters are
+   * supported. Short ranges are finished with insertion sort.
+   */
+  private void doMultikeyQuicksort() {
+    /* look up every word only once */
+    String[] words = new String[this.actualSize];
     for (int i = 0; i < this.actualSize; i++) {
-      maxLength = Math.max(maxLength, this.getWord(i).length());
+      words[i] = this.getWord(i);
     }
 
-    /* sort words into buckets */
-    for (int i = 0; i < this.actualSize; i++) {
-      String word = this.getWord(i);
-      int charIndex = bucketCharAt(word, maxLength, 0) - 'a';
-      if (charIndex >= 0) {
-        int count = this.getCount(i);
-        buckets[charIndex].add(word, count);
-      }
-    }
+    this.multikeyQuicksort(words, 0, this.actualSize, 0);
+    this.rebuildHashTable();
+  }
 
-    for (int pos = 1; pos < maxLength; pos++) {
-      WordCountsArray[] bucketsNew = new WordCountsArray[26];
-      for (int i = 0; i < bucketsNew.length; i++)
-        bucketsNew[i] = new WordCountsArray(this.actualSize / 26);
-      for (int i = 0; i < buckets.length; i++) {
-        for (int j = 0; j < buckets[i].size(); j++) {
-          String word = buckets[i].getWord(j);
-          int charIndex = bucketCharAt(word, maxLength, pos) - 'a';
-          int count = buckets[i].getCount(j);
-          bucketsNew[charIndex].add(word, count);
+  /**
+   * Sorts the specified range of words, which all share their first
+   * <code>depth</code> characters, together with the ids and counts at the same
+   * positions.
+   * 
+   * @param words the words at the positions of <code>termIds</code>
+   * @param from  the first position of the range, inclusive
+   * @param to    the last position of the range, exclusive
+   * @param depth the number of characters shared by all words in the range
+   */
+  private void multikeyQuicksort(String[] words, int from, int to, int depth) {
+    while (to - from > INSERTION_SORT_THRESHOLD) {
+      /* the median of three characters as pivot avoids the worst case on sorted input */
+      int a = charAt(words[from], depth);
+      int b = charAt(words[(from + to) >>> 1], depth);
+      int c = charAt(words[to - 1], depth);
+      int pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+
+      /* partition into words with a lower, the same and a higher character */
+      int lower = from;
+      int higher = to;
+      int i = from;
+      while (i < higher) {
+        int ch = charAt(words[i], depth);
+        if (ch < pivot) {
+          this.swap(words, lower++, i++);
+        } else if (ch > pivot) {
+          this.swap(words, i, --higher);
+        } else {
+          i++;
         }
       }
-      buckets = bucketsNew;
-    }
 
-    /* new WordCount-Array that will contain the sorted WordCount-objects */
-    WordCount[] newWordCounts = new WordCount[this.actualSize];
+      this.multikeyQuicksort(words, from, lower, depth);
+      this.multikeyQuicksort(words, higher, to, depth);
 
-    /* concatenate the sorted buckets into the new array */
-    int j = 0;
-    for (int bucket = 0; bucket < buckets.length; bucket++) {
-      for (int i = 0; i < buckets[bucket].size(); i++) {
-        newWordCounts[j] = buckets[bucket].get(i);
-        j++;
+      /* words ending at this position are all equal */
+      if (pivot < 0) {
+        return;
       }
+
+      from = lower;
+      to = higher;
+      depth++;
     }
 
-    /* set the WordCount-Array of this instance to the new sorted WordCount-Array */
-    this.wordCounts = newWordCounts;
-    this.maxSize = this.actualSize;
+    /* insertion sort for the remaining few words */
+    for (int i = from + 1; i < to; i++) {
+      for (int j = i; j > from && words[j - 1].compareTo(words[j]) > 0; j--) {
+        this.swap(words, j - 1, j);
+      }
+    }
   }
 
   /**
-   * Private helper method that returns the <code>WordCount</code>-object at the
-   * specified index.
+   * Returns the character of the specified word at the specified position.
    * 
-   * @param index the index
-   * @return the <code>WordCount</code>-object at the specified index or
-   *         <code>null</code>, if the specified index is illegal
+   * @param word     the word
+   * @param position the position
+   * @return the character or <code>-1</code>, if the word is not longer than
+   *         the position
    */
-  private WordCount get(int index) {
-    if (index < 0 || index >= this.actualSize) {
-      return null;
+  private static int charAt(String word, int position) {
+    if (position >= word.length()) {
+      return -1;
     }
 
-    return this.wordCounts[index];
+    return word.charAt(position);
+  }
+
+  /**
+   * Swaps the words, ids and counts at the specified positions.
+   * 
+   * @param words the words at the positions of <code>termIds</code>
+   * @param i     the first position
+   * @param j     the second position
+   */
+  private void swap(String[] words, int i, int j) {
+    String tmp = words[i];
+    words[i] = words[j];
+    words[j] = tmp;
+
+    this.swap(i, j);
   }
 
   /**
@@ -301,18 +496,34 @@ public class WordCountsArray {
       return 0;
     }
 
-    double scalarProductThis = this.scalarProduct(this);
-    double scalarProductWca = wca.scalarProduct(wca);
+    double normThis = this.getNorm();
+    double normWca = wca.getNorm();
 
     double scalarProduct = 0;
 
-    if (scalarProductThis != 0 && scalarProductWca != 0) {
-      scalarProduct = this.scalarProduct(wca) / (Math.sqrt(scalarProductThis * scalarProductWca));
+    if (normThis != 0 && normWca != 0) {
+      scalarProduct = this.scalarProduct(wca) / (normThis * normWca);
     }
 
     return scalarProduct;
   }
 
+  /**
+   * Returns the length of the vector of word counts administered by this
+   * instance, i.e. the square root of its scalar product with itself.
+   * 
+   * The length is calculated only once and cached until a count changes.
+   * 
+   * @return the length of the vector of word counts
+   */
+  public double getNorm() {
+    if (this.norm < 0) {
+      this.norm = Math.sqrt(this.scalarProduct(this));
+    }
+
+    return this.norm;
+  }
+
   /**
    * Returns the number of words currently administered by this instance.
    * 
@@ -323,8 +534,7 @@ public class WordCountsArray {
   }
 
   /**
-   * Returns the word at the position <code>index</code> of the
-   * {@link WordCount}-Array.
+   * Returns the word at the position <code>index</code>.
    * 
    * @param index the index
    * @return the word at the specified <code>index</code> or <code>null</code>, if
@@ -335,12 +545,27 @@ public class WordCountsArray {
       return null;
     }
 
-    return this.wordCounts[index].getWord();
+    return TermDictionary.getInstance().getTerm(this.termIds[index]);
+  }
+
+  /**
+   * Returns the id in the {@link TermDictionary} of the word at the position
+   * <code>index</code>.
+   * 
+   * @param index the index
+   * @return the id of the word at the specified <code>index</code> or
+   *         <code>-1</code>, if the specified <code>index</code> is illegal.
+   */
+  public int getTermId(int index) {
+    if (index < 0 || index >= this.actualSize) {
+      return -1;
+    }
+
+    return this.termIds[index];
   }
 
   /**
-   * Returns the count of the word at position <code>index</code> of the
-   * {@link WordCount}-Array.
+   * Returns the count of the word at position <code>index</code>.
    * 
    * @param index the index
    * @return the count of the word at the specified <code>index</code> or
@@ -351,12 +576,23 @@ public class WordCountsArray {
       return -1;
     }
 
-    return this.wordCounts[index].getCount();
+    return this.counts[index];
   }
 
   /**
-   * Returns the index of the internal {@link WordCount}-Array where the specified
-   * word is administered.
+   * Returns the count of the specified word.
+   * 
+   * @param word the word
+   * @return the count of the specified word or <code>-1</code>, if this word is
+   *         not administered
+   */
+  public int getCount(String word) {
+    return this.getCount(this.getIndexOfWord(word));
+  }
+
+  /**
+   * Returns the index of the internal arrays where the specified word is
+   * administered.
    * 
    * @param word the word for which we want to know the index
    * @return the index of the specified word in the internal array, or
@@ -368,19 +604,19 @@ public class WordCountsArray {
       return -1;
     }
 
-    /* search for the word in the array of WordCounts */
-    for (int i = 0; i < this.actualSize; i++) {
-      if (this.wordCounts[i].getWord().equals(word)) {
-        return i;
-      }
+    /* a word unknown to the dictionary cannot be administered */
+    int termId = TermDictionary.getInstance().getId(word);
+    if (termId == -1) {
+      return -1;
     }
 
-    return -1;
+    /* look up the word in the hash table */
+    return this.hashTable[this.findSlot(termId)] - 1;
   }
 
   /**
-   * Sets the count of the word at position <code>index</code> of the
-   * {@link WordCount}-Array to the specified <code>count</code>.
+   * Sets the count of the word at position <code>index</code> to the specified
+   * <code>count</code>.
    * 
    * If the specified <code>index</code> is illegal, nothing will happen. If the
    * specified <code>count</code> is lower than <code>0</code>, the count is set
@@ -394,15 +630,17 @@ public class WordCountsArray {
       return;
     }
 
+    this.norm = -1;
+
     if (count < 0) {
-      this.wordCounts[index].setCount(0);
+      this.counts[index] = 0;
     } else {
-      this.wordCounts[index].setCount(count);
+      this.counts[index] = count;
     }
   }
 
   /**
-   * Doubles the number of administerable WordCount-objects,
+   * Doubles the number of administerable words,
    */
   private void doubleSize() {
     this.maxSize = this.maxSize * 2;
@@ -412,14 +650,15 @@ public class WordCountsArray {
       this.maxSize = 1;
     }
 
-    WordCount[] newWordCounts = new WordCount[this.maxSize];
+    int[] newTermIds = new int[this.maxSize];
+    int[] newCounts = new int[this.maxSize];
 
-    /* copy old array */
-    for (int i = 0; i < this.wordCounts.length; i++) {
-      newWordCounts[i] = this.wordCounts[i];
-    }
+    /* copy old arrays */
+    System.arraycopy(this.termIds, 0, newTermIds, 0, this.actualSize);
+    System.arraycopy(this.counts, 0, newCounts, 0, this.actualSize);
 
-    this.wordCounts = newWordCounts;
+    this.termIds = newTermIds;
+    this.counts = newCounts;
   }
 
   /**
@@ -443,7 +682,7 @@ public class WordCountsArray {
 
     /* compare every single word and their counts at every position */
     for (int i = 0; i < this.size(); i++) {
-      if (!this.getWord(i).equals(wca.getWord(i)) || this.getCount(i) != wca.getCount(i)) {
+      if (this.termIds[i] != wca.termIds[i] || this.counts[i] != wca.counts[i]) {
         return false;
       }
     }